@@ -2,29 +2,81 @@ package de.yanwittmann.cmdtool;
 
 import com.fathzer.soft.javaluator.Operator;
 import de.yanwittmann.cmdtool.api.GoogleTranslate;
+import de.yanwittmann.cmdtool.chart.ChartAggregation;
 import de.yanwittmann.cmdtool.chart.ChartCreator;
+import de.yanwittmann.cmdtool.chart.ColumnCache;
 import de.yanwittmann.cmdtool.data.DataProvider;
+import de.yanwittmann.cmdtool.math.BinaryDecisionDiagram;
+import de.yanwittmann.cmdtool.math.BooleanExpression;
+import de.yanwittmann.cmdtool.math.BooleanExpressionCompiler;
+import de.yanwittmann.cmdtool.math.EquivalenceChecker;
 import de.yanwittmann.cmdtool.math.ExpressionEvaluation;
+import de.yanwittmann.cmdtool.math.LogicMinimizer;
+import de.yanwittmann.cmdtool.math.ModelCounter;
+import de.yanwittmann.cmdtool.math.OperatorKind;
+import de.yanwittmann.cmdtool.math.SatisfiabilityChecker;
 import de.yanwittmann.cmdtool.math.TreeBooleanEvaluator;
 import de.yanwittmann.cmdtool.util.ArgParser;
+import de.yanwittmann.cmdtool.util.CommandDispatcher;
 import de.yanwittmann.cmdtool.util.CommandGenerator;
+import de.yanwittmann.cmdtool.util.CommandServer;
 import de.yanwittmann.cmdtool.util.Util;
 import org.snim2.checker.ast.Formula;
 import org.snim2.checker.parser.Parser;
 
 import java.awt.*;
-import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.InputStream;
+import java.io.*;
+import java.math.BigInteger;
 import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 public class Main {
 
     private final static String TOOL_VERSION = "1.0.3";
 
+    private final static ArgParser MATH_COMMAND = CommandGenerator.getMathCommand();
+    private final static ArgParser NOTES_COMMAND = CommandGenerator.getNotesCommand();
+    private final static ArgParser CHART_COMMAND = CommandGenerator.getChartCommand();
+    private final static ArgParser TRANSLATE_COMMAND = CommandGenerator.getTranslateCommand();
+    private final static ArgParser HISTORY_COMMAND = CommandGenerator.getHistoryCommand();
+    private final static ArgParser SETTINGS_COMMAND = CommandGenerator.getSettingsCommand();
+    private final static ArgParser HELP_COMMAND = CommandGenerator.getHelpCommand();
+    private final static CommandDispatcher COMMANDS = new CommandDispatcher();
+
+    static {
+        COMMANDS.addCommand(HELP_COMMAND);
+        COMMANDS.addCommand(SETTINGS_COMMAND);
+        COMMANDS.addCommand(TRANSLATE_COMMAND);
+        COMMANDS.addCommand(CHART_COMMAND);
+        COMMANDS.addCommand(NOTES_COMMAND);
+        COMMANDS.addCommand(HISTORY_COMMAND);
+        COMMANDS.addCommand(MATH_COMMAND);
+    }
+
+    /**
+     * Without arguments, the commands are read interactively. Use <code>--script [file]</code> to run the commands in
+     * a file or <code>--batch</code> to run the commands from the standard input instead:
+     * <ul>
+     *     <li>No banner and prompts are printed, only the results of the commands.</li>
+     *     <li>The commands are not added to the history.</li>
+     *     <li>Empty lines and lines starting with <code>#</code> are skipped.</li>
+     *     <li>The exit status is <code>0</code> if all commands succeeded, <code>1</code> if at least one failed and
+     *     <code>2</code> if the commands could not be read.</li>
+     * </ul>
+     * <code>--server [port]</code> keeps the tool running and runs the commands sent by <code>--client [port]
+     * [command]</code> the same way, see {@link CommandServer}. The client sends the token of the server from the data
+     * directory, followed by the given command or, if there is none, the commands from the standard input.
+     */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(runWithArguments(args));
+            return;
+        }
 
         System.out.println("| Command Line Math-Tool version " + TOOL_VERSION + " written by Yan Wittmann");
         System.out.println("| Uses [fathzer javaluator] and [snim2 tautology-checker]");
@@ -33,14 +85,6 @@ public class Main {
         Scanner scanner = new Scanner(System.in);
         DataProvider dataProvider = DataProvider.createMainDataProvider();
 
-        ArgParser mathCommand = CommandGenerator.getMathCommand();
-        ArgParser notesCommand = CommandGenerator.getNotesCommand();
-        ArgParser chartCommand = CommandGenerator.getChartCommand();
-        ArgParser translateCommand = CommandGenerator.getTranslateCommand();
-        ArgParser historyCommand = CommandGenerator.getHistoryCommand();
-        ArgParser settingsCommand = CommandGenerator.getSettingsCommand();
-        ArgParser helpCommand = CommandGenerator.getHelpCommand();
-
         Util.setInputListener(input -> {
             if (input.startsWith("history") || input.startsWith("exit") || input.length() == 0) return;
             dataProvider.getHistoryData().addNote(input);
@@ -59,216 +103,426 @@ public class Main {
                 continue;
             }
 
-            if (helpCommand.matches(input)) {
-                try {
-                    System.out.println(settingsCommand + "\n");
-                    System.out.println(historyCommand + "\n");
-                    System.out.println(translateCommand + "\n");
-                    System.out.println(notesCommand + "\n");
-                    System.out.println(chartCommand + "\n");
-                    System.out.println(mathCommand + "\n");
-
-                } catch (Exception e) {
-                    System.err.println("An error occurred while performing the operation: " + e.getMessage());
-                    e.printStackTrace();
-                }
-            } else if (settingsCommand.matches(input)) {
-                try {
-                    ArgParser.Results result = settingsCommand.parse(input);
-                    boolean argUnicode = result.isPresent("--unicode");
+            runCommand(input, scanner, dataProvider);
+        }
+    }
 
-                    if (argUnicode) {
-                        unicodeOutput = result.getBoolean("--unicode");
-                    }
-                } catch (Exception e) {
-                    System.err.println("An error occurred while performing the operation: " + e.getMessage());
-                    e.printStackTrace();
+    private static int runWithArguments(String[] args) {
+        try {
+            if (args.length == 2 && args[0].equals("--script")) {
+                Util.setShowPrompts(false);
+                try (Scanner scanner = new Scanner(new File(args[1]), "UTF-8")) {
+                    return runCommands(scanner, DataProvider.createMainDataProvider());
                 }
-            } else if (translateCommand.matches(input)) {
-                try {
-                    ArgParser.Results result = translateCommand.parse(input);
-
-                    GoogleTranslate translate = new GoogleTranslate();
-                    translate.setLanguages(result.getString("--origin"), result.getString("--destination"));
-                    System.out.println(translate.translate(result.getString("--text")));
-                } catch (Exception e) {
-                    System.err.println("An error occurred while translating the text: " + e.getMessage());
-                    e.printStackTrace();
+            } else if (args.length == 1 && args[0].equals("--batch")) {
+                Util.setShowPrompts(false);
+                return runCommands(new Scanner(System.in), DataProvider.createMainDataProvider());
+            } else if (args[0].equals("--server") && args.length <= 2) {
+                Util.setShowPrompts(false);
+                DataProvider dataProvider = DataProvider.createMainDataProvider();
+                if (dataProvider == null) return 2;
+                int port = args.length == 2 ? Integer.parseInt(args[1]) : CommandServer.DEFAULT_PORT;
+                CommandServer.serve(port, dataProvider.getServerTokenFile(port), scanner -> runCommands(scanner, dataProvider));
+                return 0;
+            } else if (args[0].equals("--client")) {
+                int port = CommandServer.DEFAULT_PORT;
+                int commandStart = 1;
+                if (args.length > 1 && args[1].matches("\\d+")) {
+                    port = Integer.parseInt(args[1]);
+                    commandStart = 2;
                 }
-            } else if (input.startsWith("go ")) {
-                try {
-                    String goTo = "www.google.com/search?q=" + input.replace("go ", "").replace(" ", "%20") + "&btnI";
-                    Desktop.getDesktop().browse(URI.create(goTo));
-                } catch (Exception e) {
-                    System.err.println("An error occurred while translating the text: " + e.getMessage());
-                    e.printStackTrace();
+                String commands;
+                if (args.length > commandStart) {
+                    commands = String.join(" ", Arrays.asList(args).subList(commandStart, args.length));
+                } else {
+                    ByteArrayOutputStream input = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[8192];
+                    for (int read; (read = System.in.read(buffer)) != -1; ) input.write(buffer, 0, read);
+                    commands = new String(input.toByteArray(), Charset.defaultCharset());
                 }
-            } else if (chartCommand.matches(input)) {
-                try {
-                    ArgParser.Results result = chartCommand.parse(input);
-                    boolean argCsv = result.isPresent("--csv");
-                    boolean argOut = result.isPresent("--out");
-                    boolean argTitle = result.isPresent("--title");
-                    boolean argStartAtZero = result.isPresent("--startAtZero");
-
-                    File csvFile = null;
-                    if (argCsv) csvFile = new File(result.getString("--csv"));
-                    if (csvFile == null || !csvFile.exists()) csvFile = dataProvider.pickFile("CSV", "csv");
-                    if (csvFile == null || !csvFile.exists()) return;
-
-                    ChartCreator chartCreator = new ChartCreator();
-                    chartCreator.setCsvFile(csvFile);
-                    chartCreator.setChartType(result.getString("--type"));
-                    if (argOut) chartCreator.setOutFile(new File(result.getString("--out")));
-                    if (argTitle) chartCreator.setTitle(result.getString("--title"));
-                    if (argStartAtZero) chartCreator.setStartAtZero(result.getBoolean("--startAtZero"));
-                    chartCreator.makeChart();
-                    chartCreator.writeChart();
-                    chartCreator.openChart();
-
-                } catch (Exception e) {
-                    System.err.println("An error occurred while creating the chart: " + e.getMessage());
-                    e.printStackTrace();
+                DataProvider dataProvider = DataProvider.createMainDataProvider();
+                if (dataProvider == null) return 2;
+                return CommandServer.runClient(port, dataProvider.getServerTokenFile(port), commands);
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Unable to run the commands: " + e.getMessage());
+            return 2;
+        }
+        System.err.println("Usage: [--script <file> | --batch | --server [port] | --client [port] [command]]");
+        return 2;
+    }
+
+    /**
+     * Runs the commands of a script without prompts. A command that overflows the stack is reported as failed like
+     * any other error, the script continues with the next command.
+     *
+     * @return <code>0</code> if all commands succeeded, otherwise <code>1</code>.
+     */
+    private static int runCommands(Scanner scanner, DataProvider dataProvider) {
+        boolean failed = false;
+        while (scanner.hasNextLine()) {
+            String input = scanner.nextLine().trim();
+            if (input.length() == 0 || input.startsWith("#")) continue;
+            if (input.equals("exit") || input.equals("quit")) break;
+            try {
+                if (!runCommand(input, scanner, dataProvider)) failed = true;
+            } catch (StackOverflowError e) {
+                // deeply nested expressions only fail their own command, the following commands still run
+                System.out.println();
+                System.err.println("An error occurred while performing the operation: the input is nested too deeply");
+                failed = true;
+            }
+        }
+        System.out.flush();
+        return failed ? 1 : 0;
+    }
+
+    /**
+     * Runs a single command. Commands that require further input read it from the scanner.
+     *
+     * @return If the command succeeded.
+     */
+    private static boolean runCommand(String input, Scanner scanner, DataProvider dataProvider) {
+        CommandDispatcher.Dispatch dispatch = COMMANDS.dispatch(input);
+        ArgParser command = dispatch != null ? dispatch.getCommand() : null;
+        if (dispatch != null && !dispatch.isSuccessful()) {
+            System.err.println("Invalid syntax for command " + command.getPrefix() + ": " + dispatch.getError());
+            return false;
+        }
+        ArgParser.Results result = dispatch != null ? dispatch.getResults() : null;
+
+        if (command == HELP_COMMAND) {
+            try {
+                System.out.println(SETTINGS_COMMAND + "\n");
+                System.out.println(HISTORY_COMMAND + "\n");
+                System.out.println(TRANSLATE_COMMAND + "\n");
+                System.out.println(NOTES_COMMAND + "\n");
+                System.out.println(CHART_COMMAND + "\n");
+                System.out.println(MATH_COMMAND + "\n");
+
+            } catch (Exception e) {
+                System.err.println("An error occurred while performing the operation: " + e.getMessage());
+                e.printStackTrace();
+                return false;
+            }
+        } else if (command == SETTINGS_COMMAND) {
+            try {
+                boolean argUnicode = result.isPresent("--unicode");
+
+                if (argUnicode) {
+                    unicodeOutput = result.getBoolean("--unicode");
                 }
-            } else if (notesCommand.matches(input)) {
-                try {
-                    ArgParser.Results result = notesCommand.parse(input);
-                    boolean argAdd = result.isPresent("--add");
-                    boolean argRemove = result.isPresent("--remove");
-                    boolean argList = result.isPresent("--list");
-                    boolean argClear = result.isPresent("--clear");
-
-                    if (argAdd) {
-                        String noteText = result.getString("--add");
-                        int noteIndex = dataProvider.getNotesData().addNote(noteText);
-                        System.out.println("Created note with index " + noteIndex);
-                        dataProvider.save();
-                    } else if (argRemove) {
-                        int noteIndex = result.getInt("--remove");
-                        dataProvider.getNotesData().removeNote(noteIndex);
-                        System.out.println("Removed note with index " + noteIndex);
+            } catch (Exception e) {
+                System.err.println("An error occurred while performing the operation: " + e.getMessage());
+                e.printStackTrace();
+                return false;
+            }
+        } else if (command == TRANSLATE_COMMAND) {
+            try {
+                GoogleTranslate translate = new GoogleTranslate();
+                translate.setLanguages(result.getString("--origin"), result.getString("--destination"));
+                System.out.println(translate.translate(result.getString("--text")));
+            } catch (Exception e) {
+                System.err.println("An error occurred while translating the text: " + e.getMessage());
+                e.printStackTrace();
+                return false;
+            }
+        } else if (input.startsWith("go ")) {
+            try {
+                String goTo = "www.google.com/search?q=" + input.replace("go ", "").replace(" ", "%20") + "&btnI";
+                Desktop.getDesktop().browse(URI.create(goTo));
+            } catch (Exception e) {
+                System.err.println("An error occurred while translating the text: " + e.getMessage());
+                e.printStackTrace();
+                return false;
+            }
+        } else if (command == CHART_COMMAND) {
+            try {
+                boolean argCsv = result.isPresent("-csv");
+                boolean argOut = result.isPresent("-out");
+                boolean argTitle = result.isPresent("--title");
+                boolean argStartAtZero = result.isPresent("--startAtZero");
+                boolean argMaxPoints = result.isPresent("--maxPoints");
+                boolean argColumn = result.isPresent("--column");
+                boolean argGroupBy = result.isPresent("--groupBy");
+                boolean argRolling = result.isPresent("--rolling");
+                boolean argBucket = result.isPresent("--bucket");
+                boolean argAggregate = result.isPresent("--aggregate");
+
+                File csvFile = null;
+                if (argCsv) csvFile = new File(result.getString("-csv"));
+                if (csvFile == null || !csvFile.exists()) csvFile = dataProvider.pickFile("CSV", "csv");
+                if (csvFile == null || !csvFile.exists()) throw new FileNotFoundException("No CSV file selected");
+
+                ChartCreator chartCreator = new ChartCreator();
+                chartCreator.setCsvFile(csvFile);
+                chartCreator.setColumnCache(new ColumnCache(dataProvider.getCsvCacheDir()));
+                chartCreator.setChartType(result.getString("--type"));
+                if (argOut) chartCreator.setOutFile(new File(result.getString("-out")));
+                if (argTitle) chartCreator.setTitle(result.getString("--title"));
+                if (argStartAtZero) chartCreator.setStartAtZero(result.getBoolean("--startAtZero"));
+                if (argMaxPoints) chartCreator.setMaxPoints(result.getInt("--maxPoints"));
+                if (argColumn)
+                    for (String definition : result.getString("--column").split(";"))
+                        if (definition.trim().length() > 0) chartCreator.addColumn(definition);
+                if ((argGroupBy ? 1 : 0) + (argRolling ? 1 : 0) + (argBucket ? 1 : 0) > 1)
+                    throw new IllegalArgumentException("Only one of --groupBy, --rolling and --bucket can be used");
+                ChartAggregation.Function aggregateFunction = argAggregate ? ChartAggregation.Function.fromName(result.getString("--aggregate")) : ChartAggregation.Function.MEAN;
+                if (argGroupBy) chartCreator.setAggregation(ChartAggregation.groupBy(result.getString("--groupBy"), aggregateFunction));
+                else if (argRolling) chartCreator.setAggregation(ChartAggregation.rolling(result.getInt("--rolling"), aggregateFunction));
+                else if (argBucket) chartCreator.setAggregation(ChartAggregation.bucket(result.getInt("--bucket"), aggregateFunction));
+                else if (argAggregate) throw new IllegalArgumentException("--aggregate requires --groupBy, --rolling or --bucket");
+                chartCreator.makeChart();
+                chartCreator.writeChart();
+                chartCreator.openChart();
+
+            } catch (Exception e) {
+                System.err.println("An error occurred while creating the chart: " + e.getMessage());
+                e.printStackTrace();
+                return false;
+            }
+        } else if (command == NOTES_COMMAND) {
+            try {
+                boolean argAdd = result.isPresent("--add");
+                boolean argRemove = result.isPresent("--remove");
+                boolean argList = result.isPresent("--list");
+                boolean argClear = result.isPresent("--clear");
+
+                if (argAdd) {
+                    String noteText = result.getString("--add");
+                    int noteIndex = dataProvider.getNotesData().addNote(noteText);
+                    System.out.println("Created note with index " + noteIndex);
+                    dataProvider.save();
+                } else if (argRemove) {
+                    int noteIndex = result.getInt("--remove");
+                    dataProvider.getNotesData().removeNote(noteIndex);
+                    System.out.println("Removed note with index " + noteIndex);
+                    dataProvider.save();
+                } else if (argList) {
+                    List<String> notes = dataProvider.getNotesData().getNotes();
+                    for (int i = 0; i < notes.size(); i++)
+                        System.out.printf(" %2d: %s%n", i, notes.get(i));
+                } else if (argClear) {
+                    System.out.println("Are you sure? This cannot be undone. Type [confirm] to delete all notes:");
+                    if (Util.askForInput(scanner, Util.INPUT_INDENT_1).equals("confirm")) {
+                        dataProvider.getNotesData().clearNotes();
                         dataProvider.save();
-                    } else if (argList) {
-                        List<String> notes = dataProvider.getNotesData().getNotes();
-                        for (int i = 0; i < notes.size(); i++)
-                            System.out.printf(" %2d: %s%n", i, notes.get(i));
-                    } else if (argClear) {
-                        System.out.println("Are you sure? This cannot be undone. Type [confirm] to delete all notes:");
-                        if (Util.askForInput(scanner, Util.INPUT_INDENT_1).equals("confirm")) {
-                            dataProvider.getNotesData().clearNotes();
-                            dataProvider.save();
-                            System.out.println("Cleared all notes.");
-                        }
+                        System.out.println("Cleared all notes.");
                     }
-                } catch (Exception e) {
-                    System.err.println("An error occurred while performing the operation: " + e.getMessage());
-                    e.printStackTrace();
                 }
-            } else if (historyCommand.matches(input)) {
-                try {
-                    ArgParser.Results result = historyCommand.parse(input);
-                    boolean argClear = result.isPresent("--clear");
-                    boolean argHead = result.isPresent("--head");
-
-                    if (argClear) {
-                        dataProvider.getHistoryData().clearNotes();
-                        dataProvider.save();
-                        System.out.println("Cleared history.");
-                    } else {
-                        List<String> notes = dataProvider.getHistoryData().getNotes();
-                        if (notes.size() == 0) System.out.println("History is empty.");
-                        for (int i = notes.size() - 1; i > 0 && (!argHead || i >= notes.size() - 5); i--) {
-                            System.out.printf(" %2d: %s%n", i, notes.get(i));
-                        }
+            } catch (Exception e) {
+                System.err.println("An error occurred while performing the operation: " + e.getMessage());
+                e.printStackTrace();
+                return false;
+            }
+        } else if (command == HISTORY_COMMAND) {
+            try {
+                boolean argClear = result.isPresent("--clear");
+                boolean argHead = result.isPresent("--head");
+
+                if (argClear) {
+                    dataProvider.getHistoryData().clearNotes();
+                    dataProvider.save();
+                    System.out.println("Cleared history.");
+                } else {
+                    List<String> notes = dataProvider.getHistoryData().getNotes();
+                    if (notes.size() == 0) System.out.println("History is empty.");
+                    for (int i = notes.size() - 1; i > 0 && (!argHead || i >= notes.size() - 5); i--) {
+                        System.out.printf(" %2d: %s%n", i, notes.get(i));
                     }
-                } catch (Exception e) {
-                    System.err.println("An error occurred while performing the operation: " + e.getMessage());
-                    e.printStackTrace();
                 }
-            } else if (mathCommand.matches(input)) {
-                try {
-                    ArgParser.Results result = mathCommand.parse(input);
-
-                    boolean argTautologie = result.isPresent("--tautologie");
-                    boolean argTruth = result.isPresent("--truth");
-                    boolean argTruthBuilder = result.isPresent("--truthbuilder");
-                    boolean argVariables = result.isPresent("--variables");
-                    boolean argEquals = result.isPresent("--equals");
-                    boolean argP1 = result.isPresent("-p1");
-                    boolean argP2 = result.isPresent("-p2");
-
-                    if (argTautologie) {
-                        InputStream inputStream = new ByteArrayInputStream(
-                                result.getString("--tautologie")
-                                        .replace("1", "TT")
-                                        .replace("0", "FF")
-                                        .getBytes()
-                        );
-                        Parser myParser = new Parser(inputStream);
-                        inputStream.close();
-
-                        Formula formula = myParser.getAST();
-                        System.out.println("    Abstract Syntax Tree: " + normalizeExpressionOutput(formula));
-                        formula = formula.removeImplications();
-                        System.out.println("    Removed Implications: " + normalizeExpressionOutput(formula));
-                        formula = formula.toNnf();
-                        System.out.println("    Negative Normal Form: " + normalizeExpressionOutput(formula));
-                        formula = formula.nnfToCnf();
-                        System.out.println(" Conjunctive Normal Form: " + normalizeExpressionOutput(formula));
-                        formula = formula.simplifyCnf();
-                        System.out.println("              Simplified: " + normalizeExpressionOutput(formula));
-                        System.out.println("                  Result: " + (org.snim2.checker.ast.True.VALUE == formula));
+            } catch (Exception e) {
+                System.err.println("An error occurred while performing the operation: " + e.getMessage());
+                e.printStackTrace();
+                return false;
+            }
+        } else if (command == MATH_COMMAND) {
+            try {
+                boolean argTautologie = result.isPresent("--tautologie");
+                boolean argSatisfiable = result.isPresent("--satisfiable");
+                boolean argCnf = result.isPresent("--cnf");
+                boolean argTruth = result.isPresent("--truth");
+                boolean argTruthBuilder = result.isPresent("--truthbuilder");
+                boolean argCount = result.isPresent("--count");
+                boolean argMinterms = result.isPresent("--minterms");
+                boolean argMinimize = result.isPresent("--minimize");
+                boolean argVariables = result.isPresent("--variables");
+                boolean argEquals = result.isPresent("--equals");
+                boolean argP1 = result.isPresent("-p1");
+                boolean argP2 = result.isPresent("-p2");
+                boolean argTable = result.isPresent("--table");
+                boolean argBdd = result.isPresent("--bdd");
+                boolean argSteps = result.isPresent("--steps");
+                int threads = result.isPresent("--threads") ? result.getInt("--threads") : ExpressionEvaluation.DEFAULT_THREADS;
+                if (threads < 1) throw new IllegalArgumentException("The amount of threads has to be at least 1");
+
+                if (argTautologie && !argCnf) {
+                    SatisfiabilityChecker.Result tautology = SatisfiabilityChecker.checkTautology(result.getString("--tautologie"));
+                    System.out.println(normalizeExpressionOutput(result.getString("--tautologie")));
+                    System.out.println("Checked " + tautology.getClauseCount() + " clauses with " + tautology.getVariableCount() + " variables");
+                    if (tautology.isSuccessful()) {
+                        System.out.println("Result: true");
+                    } else {
+                        System.out.println("Result: false, counterexample:");
+                        System.out.println(" " + tautology.formatAssignment());
+                    }
+                    System.out.println();
+
+                } else if (argTautologie) {
+                    InputStream inputStream = new ByteArrayInputStream(
+                            result.getString("--tautologie")
+                                    .replace("1", "TT")
+                                    .replace("0", "FF")
+                                    .getBytes()
+                    );
+                    Parser myParser = new Parser(inputStream);
+                    inputStream.close();
+
+                    Formula formula = myParser.getAST();
+                    System.out.println("    Abstract Syntax Tree: " + normalizeExpressionOutput(formula));
+                    formula = formula.removeImplications();
+                    System.out.println("    Removed Implications: " + normalizeExpressionOutput(formula));
+                    formula = formula.toNnf();
+                    System.out.println("    Negative Normal Form: " + normalizeExpressionOutput(formula));
+                    formula = formula.nnfToCnf();
+                    System.out.println(" Conjunctive Normal Form: " + normalizeExpressionOutput(formula));
+                    formula = formula.simplifyCnf();
+                    System.out.println("              Simplified: " + normalizeExpressionOutput(formula));
+                    System.out.println("                  Result: " + (org.snim2.checker.ast.True.VALUE == formula));
+                    System.out.println();
+
+                } else if (argSatisfiable) {
+                    SatisfiabilityChecker.Result satisfiable = SatisfiabilityChecker.checkSatisfiable(result.getString("--satisfiable"));
+                    System.out.println(normalizeExpressionOutput(result.getString("--satisfiable")));
+                    System.out.println("Checked " + satisfiable.getClauseCount() + " clauses with " + satisfiable.getVariableCount() + " variables");
+                    if (satisfiable.isSuccessful()) {
+                        System.out.println("Result: true, satisfying assignment:");
+                        System.out.println(" " + satisfiable.formatAssignment());
+                    } else {
+                        System.out.println("Result: false");
+                    }
+                    System.out.println();
+
+                } else if (argBdd && result.getString("--bdd") != null) {
+                    String expression = result.getString("--bdd");
+                    List<String> variables = ExpressionEvaluation.extractVariables(expression);
+                    BooleanExpression compiled = BooleanExpressionCompiler.compile(expression, variables);
+                    BinaryDecisionDiagram diagram = BinaryDecisionDiagram.forExpression(compiled, variables.size());
+                    int root = diagram.build(compiled);
+
+                    List<String> order = new ArrayList<>();
+                    for (int bit : diagram.getVariableOrder()) order.add(variables.get(variables.size() - 1 - bit));
+                    System.out.println(normalizeExpressionOutput(expression));
+                    System.out.println("Variable order: " + order);
+                    System.out.println("Nodes: " + diagram.getNodeCount(root) + " (" + diagram.getCreatedNodeCount() + " created)");
+                    System.out.println("Satisfying assignments: " + diagram.getModelCount(root) + " of " + BigInteger.ONE.shiftLeft(variables.size()));
+                    System.out.println("Tautology: " + (root == BinaryDecisionDiagram.TRUE));
+                    System.out.println();
+
+                } else if (argCount) {
+                    ModelCounter.Result count = ModelCounter.count(result.getString("--count"), threads);
+                    System.out.println(normalizeExpressionOutput(result.getString("--count")));
+                    System.out.println("Counted using " + count.getMethod());
+                    System.out.println("Satisfying assignments: " + count.getCount() + " of " + count.getRowCount());
+                    System.out.println();
+
+                } else if (argMinterms) {
+                    System.out.println(normalizeExpressionOutput(result.getString("--minterms")));
+                    System.out.println("Minterms of " + ExpressionEvaluation.extractVariables(result.getString("--minterms")) + ":");
+                    Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+                    long count = ExpressionEvaluation.writeMinterms(result.getString("--minterms"), out);
+                    out.flush();
+                    System.out.println("Total: " + count);
+                    System.out.println();
+
+                } else if (argMinimize && result.getString("--minimize") != null) {
+                    String expression = result.getString("--minimize");
+                    List<String> variables = ExpressionEvaluation.extractVariables(expression);
+                    LogicMinimizer minimizer = LogicMinimizer.forExpression(BooleanExpressionCompiler.compile(expression, variables), variables.size());
+                    System.out.println(normalizeExpressionOutput(expression));
+                    System.out.println("Sum of products: " + formatMinimized(minimizer.minimizeSumOfProducts(), variables));
+                    System.out.println("Product of sums: " + formatMinimized(minimizer.minimizeProductOfSums(), variables));
+                    System.out.println();
+
+                } else if (argTruth) {
+                    System.out.println(normalizeExpressionOutput(result.getString("--truth")));
+                    printTruthTable(result.getString("--truth"), threads, argSteps);
+
+                } else if (argTruthBuilder) {
+                    System.out.println("Enter the input variables, split by a space character:");
+                    List<String> variables = ExpressionEvaluation.extractVariables(Util.askForInput(scanner, Util.INPUT_INDENT_1));
+                    System.out.println("Enter one expression per line, leave empty to stop. To assign a new variable, enter [VAR] = [EXPR]. Use [undo] and [restart] to control the input.");
+                    List<String> expressions = Util.multiCmdInput(scanner, input1 -> {
+                        try {
+                            ExpressionEvaluation.validateMultipleExpressions(variables, input1);
+                        } catch (Exception e) {
+                            System.out.println("Input error: " + e.getMessage());
+                        }
+                    });
+                    ExpressionEvaluation.writeTruthTableFromMultipleExpressions(variables, expressions, System.out, Charset.defaultCharset(), threads);
+                    System.out.println();
+                    if (argMinimize) {
+                        for (boolean productOfSums : new boolean[]{false, true}) {
+                            System.out.println(productOfSums ? "Minimized product of sums:" : "Minimized sum of products:");
+                            for (Map.Entry<String, LogicMinimizer.Cover> column : ExpressionEvaluation.minimizeMultipleExpressions(variables, expressions, productOfSums).entrySet())
+                                System.out.println(" " + column.getKey() + " = " + formatMinimized(column.getValue(), variables));
+                        }
                         System.out.println();
+                    }
+
+                } else if (argVariables) {
+                    System.out.println(normalizeExpressionOutput(result.getString("--variables")));
+                    System.out.println(ExpressionEvaluation.extractVariables(result.getString("--variables")));
 
-                    } else if (argTruth) {
-                        System.out.println(normalizeExpressionOutput(result.getString("--truth")));
-                        System.out.println(ExpressionEvaluation.generateTruthTable(result.getString("--truth")));
-
-                    } else if (argTruthBuilder) {
-                        System.out.println("Enter the input variables, split by a space character:");
-                        List<String> variables = ExpressionEvaluation.extractVariables(Util.askForInput(scanner, Util.INPUT_INDENT_1));
-                        System.out.println("Enter one expression per line, leave empty to stop. To assign a new variable, enter [VAR] = [EXPR]. Use [undo] and [restart] to control the input.");
-                        List<String> expressions = Util.multiCmdInput(scanner, input1 -> {
-                            try {
-                                ExpressionEvaluation.buildTruthTableFromMultipleExpressions(variables, input1);
-                            } catch (Exception e) {
-                                System.out.println("Input error: " + e.getMessage());
-                            }
-                        });
-                        System.out.println(ExpressionEvaluation.buildTruthTableFromMultipleExpressions(variables, expressions));
-
-                    } else if (argVariables) {
-                        System.out.println(normalizeExpressionOutput(result.getString("--variables")));
-                        System.out.println(ExpressionEvaluation.extractVariables(result.getString("--variables")));
-
-                    } else if (argEquals && argP1 && argP2) {
-                        String result1 = ExpressionEvaluation.generateTruthTable(result.getString("-p1"));
-                        String result2 = ExpressionEvaluation.generateTruthTable(result.getString("-p2"));
-
-                        if (result1.equals(result2)) {
-                            System.out.println("Both expressions lead to the same truth table:");
-                            System.out.println("(" + normalizeExpressionOutput(result.getString("-p1")) + ")  <=>  (" + normalizeExpressionOutput(result.getString("-p2")) + ")");
-                            System.out.println(result1);
-                        } else {
-                            System.out.println("The expressions lead to different truth tables:");
+                } else if (argEquals && argP1 && argP2) {
+                    EquivalenceChecker.Result equivalence = argBdd
+                            ? EquivalenceChecker.checkWithBdd(result.getString("-p1"), result.getString("-p2"))
+                            : EquivalenceChecker.check(result.getString("-p1"), result.getString("-p2"));
+
+                    if (equivalence.isEquivalent()) {
+                        System.out.println("Both expressions lead to the same truth table:");
+                        System.out.println("(" + normalizeExpressionOutput(result.getString("-p1")) + ")  <=>  (" + normalizeExpressionOutput(result.getString("-p2")) + ")");
+                        if (argTable) printTruthTable(result.getString("-p1"), threads, argSteps);
+                    } else {
+                        System.out.println("The expressions lead to different truth tables, counterexample:");
+                        System.out.println(" " + equivalence.formatCounterexample());
+                        System.out.println(normalizeExpressionOutput(result.getString("-p1")) + " = " + (equivalence.getResult1() ? 1 : 0));
+                        System.out.println(normalizeExpressionOutput(result.getString("-p2")) + " = " + (equivalence.getResult2() ? 1 : 0));
+                        if (argTable) {
+                            System.out.println();
                             System.out.println(normalizeExpressionOutput(result.getString("-p1")));
-                            System.out.println(result1);
+                            printTruthTable(result.getString("-p1"), threads, argSteps);
                             System.out.println(normalizeExpressionOutput(result.getString("-p2")));
-                            System.out.println(result2);
+                            printTruthTable(result.getString("-p2"), threads, argSteps);
                         }
                     }
+                }
 
-                } catch (Exception e) {
-                    System.err.println("An error occurred while parsing/solving the input: " + e.getMessage());
-                    e.printStackTrace();
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException ex) {
-                        ex.printStackTrace();
-                    }
+            } catch (Exception e) {
+                System.err.println("An error occurred while parsing/solving the input: " + e.getMessage());
+                e.printStackTrace();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ex) {
+                    ex.printStackTrace();
                 }
+                return false;
             }
+        } else {
+            System.err.println("Unknown command: " + input);
+            return false;
         }
+        return true;
+    }
+
+    private static void printTruthTable(String expression, int threads, boolean steps) throws IOException {
+        if (steps) ExpressionEvaluation.writeTruthTableWithSteps(expression, System.out, Charset.defaultCharset(), threads);
+        else ExpressionEvaluation.writeTruthTable(expression, System.out, Charset.defaultCharset(), threads);
+        System.out.println();
+    }
+
+    private static String formatMinimized(LogicMinimizer.Cover cover, List<String> variables) {
+        return normalizeExpressionOutput(cover.toExpression(variables)) + (cover.isExact() ? "" : " (heuristic)");
     }
 
     private static String normalizeExpressionOutput(Formula formula) {
@@ -311,6 +565,33 @@ public class Main {
         return expression.replaceAll(" +", " ").replace("! ", "!").replace("( !", "(!").trim();
     }
 
+    /**
+     * @return The symbol of the operator in the current output mode, used to write compiled expressions without
+     * replacing the operators in their text, which would also match inside of <code>NAND</code>, <code>NOR</code> and
+     * <code>XOR</code>.
+     */
+    public static String getOperatorSymbol(OperatorKind kind) {
+        switch (kind) {
+            case NOT:
+                return (unicodeOutput ? UNICODE_NOT : ASCII_NOT).trim();
+            case AND:
+                return (unicodeOutput ? UNICODE_AND : ASCII_AND).trim();
+            case OR:
+                return (unicodeOutput ? UNICODE_OR : ASCII_OR).trim();
+            case NAND:
+                return (unicodeOutput ? UNICODE_NAND : ASCII_NAND).trim();
+            case NOR:
+                return (unicodeOutput ? UNICODE_NOR : ASCII_NOR).trim();
+            case XOR:
+                return (unicodeOutput ? UNICODE_XOR : ASCII_XOR).trim();
+            case IMPL:
+                return (unicodeOutput ? UNICODE_IMPL : ASCII_IMPL).trim();
+            case EQUI:
+                return (unicodeOutput ? UNICODE_EQUI : ASCII_EQUI).trim();
+        }
+        throw new IllegalArgumentException("Unknown operator kind: " + kind);
+    }
+
     private final static String UNICODE_NOT = " \u00AC";
     private final static String UNICODE_AND = " \u2227 ";
     private final static String UNICODE_OR = " \u2228 ";
@@ -0,0 +1,443 @@
+package de.yanwittmann.cmdtool.chart;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Summarizes the rows of a csv file before they are charted. The rows are read one after another and aggregated while
+ * reading, so the file is never held in memory:
+ * <ul>
+ *     <li><b>Group by</b> combines all rows with the same value in a label column into one row per value, in the order
+ *     the values first appear. The label column may contain any text and is used as labels of the chart. Only one
+ *     accumulator per group and column is kept.</li>
+ *     <li><b>Rolling</b> replaces every row with the aggregate of the last <code>n</code> rows, including the row
+ *     itself. Only the values of the current window are kept, minimum and maximum are tracked using a monotonic queue
+ *     per column.</li>
+ *     <li><b>Bucket</b> combines every <code>n</code> consecutive rows into one row, the last bucket may be smaller.
+ *     Only the accumulator of the current bucket is kept.</li>
+ * </ul>
+ */
+public class ChartAggregation {
+
+    public enum Function {
+        MEAN, SUM, MIN, MAX, COUNT;
+
+        public static Function fromName(String name) {
+            for (Function function : values())
+                if (function.name().equalsIgnoreCase(name.trim())) return function;
+            throw new IllegalArgumentException("Unknown aggregate function " + name + ", use one of " + Arrays.toString(values()).toLowerCase());
+        }
+    }
+
+    private enum Mode {
+        GROUP_BY, ROLLING, BUCKET
+    }
+
+    private final Mode mode;
+    private final Function function;
+    private final String labelColumn;
+    private final int size;
+
+    private ChartAggregation(Mode mode, Function function, String labelColumn, int size) {
+        this.mode = mode;
+        this.function = function;
+        this.labelColumn = labelColumn;
+        this.size = size;
+    }
+
+    /**
+     * @param labelColumn The name of the column to group by, or its position like <code>$1</code>.
+     * @param function    The function to combine the values of a group with.
+     */
+    public static ChartAggregation groupBy(String labelColumn, Function function) {
+        if (labelColumn == null || labelColumn.trim().isEmpty()) throw new IllegalArgumentException("Missing column to group by");
+        return new ChartAggregation(Mode.GROUP_BY, function, labelColumn.trim(), 0);
+    }
+
+    /**
+     * @param window   The amount of rows in the window, at least <code>1</code>.
+     * @param function The function to combine the values of the window with.
+     */
+    public static ChartAggregation rolling(int window, Function function) {
+        if (window < 1) throw new IllegalArgumentException("The window has to contain at least one row");
+        return new ChartAggregation(Mode.ROLLING, function, null, window);
+    }
+
+    /**
+     * @param bucketSize The amount of rows per bucket, at least <code>1</code>.
+     * @param function   The function to combine the values of a bucket with.
+     */
+    public static ChartAggregation bucket(int bucketSize, Function function) {
+        if (bucketSize < 1) throw new IllegalArgumentException("A bucket has to contain at least one row");
+        return new ChartAggregation(Mode.BUCKET, function, null, bucketSize);
+    }
+
+    /**
+     * Reads and aggregates the csv file, the first row contains the names of the columns.
+     *
+     * @param csvFile The file to read.
+     * @return The aggregated columns and the labels of their rows.
+     * @throws IOException If the file cannot be read.
+     */
+    public Result aggregate(File csvFile) throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8));
+             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT)) {
+            Iterator<CSVRecord> records = csvParser.iterator();
+            if (!records.hasNext()) return new Result(new ArrayList<>(), new ArrayList<>());
+
+            List<String> headers = new ArrayList<>();
+            for (String header : records.next()) headers.add(header);
+            int labelIndex = mode == Mode.GROUP_BY ? findLabelColumn(headers) : -1;
+            List<String> names = new ArrayList<>(headers);
+            if (labelIndex != -1) names.remove(labelIndex);
+            if (function == Function.COUNT) names = Collections.singletonList("count");
+
+            List<DoubleColumn> columns = new ArrayList<>();
+            for (String name : names) columns.add(new DoubleColumn(name));
+            Stage stage = mode == Mode.GROUP_BY ? new GroupByStage(function, columns)
+                    : mode == Mode.ROLLING ? new RollingStage(function, columns, size)
+                    : new BucketStage(function, columns, size);
+
+            double[] values = new double[headers.size() - (labelIndex == -1 ? 0 : 1)];
+            while (records.hasNext()) {
+                CSVRecord record = records.next();
+                if (record.size() < headers.size())
+                    throw new IOException("Line " + record.getRecordNumber() + " has " + record.size() + " values, expected " + headers.size());
+                for (int i = 0, v = 0; i < headers.size(); i++) {
+                    if (i != labelIndex) values[v++] = Double.parseDouble(record.get(i).trim());
+                }
+                stage.accept(labelIndex == -1 ? null : record.get(labelIndex).trim(), values);
+            }
+            List<String> labels = stage.finish();
+
+            for (DoubleColumn column : columns) column.trimToSize();
+            return new Result(columns, labels);
+        }
+    }
+
+    private int findLabelColumn(List<String> headers) {
+        for (int i = 0; i < headers.size(); i++)
+            if (headers.get(i).trim().equals(labelColumn)) return i;
+        if (labelColumn.startsWith("$")) {
+            try {
+                int position = Integer.parseInt(labelColumn.substring(1));
+                if (position >= 1 && position <= headers.size()) return position - 1;
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        throw new IllegalArgumentException("Unknown column to group by: " + labelColumn);
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case GROUP_BY:
+                return function.name().toLowerCase() + " grouped by " + labelColumn;
+            case ROLLING:
+                return "rolling " + function.name().toLowerCase() + " of " + size + " rows";
+            default:
+                return function.name().toLowerCase() + " of every " + size + " rows";
+        }
+    }
+
+    public static class Result {
+        private final List<DoubleColumn> columns;
+        private final List<String> labels;
+
+        private Result(List<DoubleColumn> columns, List<String> labels) {
+            this.columns = columns;
+            this.labels = labels;
+        }
+
+        public List<DoubleColumn> getColumns() {
+            return columns;
+        }
+
+        /**
+         * @return The label of every row of the columns, or <code>null</code> if the rows keep the labels of the rows
+         * of the csv file.
+         */
+        public List<String> getLabels() {
+            return labels;
+        }
+    }
+
+    /**
+     * Receives the rows one after another and adds the aggregated rows to the columns it was created with.
+     */
+    private interface Stage {
+        /**
+         * @param label  The value of the label column, <code>null</code> if there is none.
+         * @param values The values of the other columns, only valid during the call.
+         */
+        void accept(String label, double[] values);
+
+        /**
+         * @return The labels of the aggregated rows, or <code>null</code> if they keep the labels of the csv rows.
+         */
+        List<String> finish();
+    }
+
+    /**
+     * Combines values using one of the functions, for every column separately.
+     */
+    private static class Accumulator {
+        private final Function function;
+        private final double[] values;
+        private long count = 0;
+
+        private Accumulator(Function function, int columns) {
+            this.function = function;
+            this.values = new double[columns];
+        }
+
+        private void add(double[] row) {
+            if (count == 0) {
+                System.arraycopy(row, 0, values, 0, values.length);
+            } else {
+                for (int i = 0; i < values.length; i++) {
+                    switch (function) {
+                        case MIN:
+                            values[i] = Math.min(values[i], row[i]);
+                            break;
+                        case MAX:
+                            values[i] = Math.max(values[i], row[i]);
+                            break;
+                        default:
+                            values[i] += row[i];
+                    }
+                }
+            }
+            count++;
+        }
+
+        private void writeTo(List<DoubleColumn> columns) {
+            if (function == Function.COUNT) {
+                columns.get(0).add(count);
+                return;
+            }
+            for (int i = 0; i < values.length; i++)
+                columns.get(i).add(function == Function.MEAN ? values[i] / count : values[i]);
+        }
+    }
+
+    private static class GroupByStage implements Stage {
+        private final Function function;
+        private final List<DoubleColumn> columns;
+        private final Map<String, Accumulator> groups = new LinkedHashMap<>();
+
+        private GroupByStage(Function function, List<DoubleColumn> columns) {
+            this.function = function;
+            this.columns = columns;
+        }
+
+        @Override
+        public void accept(String label, double[] values) {
+            groups.computeIfAbsent(label, key -> new Accumulator(function, values.length)).add(values);
+        }
+
+        @Override
+        public List<String> finish() {
+            List<String> labels = new ArrayList<>(groups.size());
+            for (Map.Entry<String, Accumulator> group : groups.entrySet()) {
+                group.getValue().writeTo(columns);
+                labels.add(group.getKey());
+            }
+            return labels;
+        }
+    }
+
+    private static class BucketStage implements Stage {
+        private final Function function;
+        private final List<DoubleColumn> columns;
+        private final int bucketSize;
+        private Accumulator bucket;
+        private long rows = 0;
+        private int buckets = 0;
+
+        private BucketStage(Function function, List<DoubleColumn> columns, int bucketSize) {
+            this.function = function;
+            this.columns = columns;
+            this.bucketSize = bucketSize;
+        }
+
+        @Override
+        public void accept(String label, double[] values) {
+            if (bucket == null) bucket = new Accumulator(function, values.length);
+            bucket.add(values);
+            rows++;
+            if (bucket.count == bucketSize) writeBucket();
+        }
+
+        @Override
+        public List<String> finish() {
+            if (bucket != null) writeBucket();
+            // the labels only depend on the index of the bucket, so they are created when they are written
+            long rowCount = rows;
+            int bucketCount = buckets;
+            return new AbstractList<String>() {
+                @Override
+                public String get(int index) {
+                    if (index < 0 || index >= bucketCount) throw new IndexOutOfBoundsException("Bucket " + index + " of " + bucketCount);
+                    long first = (long) index * bucketSize;
+                    return "Dataset " + (first + 1) + "-" + Math.min(first + bucketSize, rowCount);
+                }
+
+                @Override
+                public int size() {
+                    return bucketCount;
+                }
+            };
+        }
+
+        private void writeBucket() {
+            bucket.writeTo(columns);
+            buckets++;
+            bucket = null;
+        }
+    }
+
+    /**
+     * Keeps the values of the last rows in a ring buffer per column. Minimum and maximum are the first element of a
+     * queue of the rows in the window whose values are increasing (or decreasing), so that every row is added to and
+     * removed from the queue at most once. Values that are NaN are only counted, the result is NaN while they are in
+     * the window.<br>
+     * Sums are updated when a row enters or leaves the window, using a compensated sum of the finite values. Values
+     * that are not finite are only counted, so that they stop affecting the sum once they leave the window. The sums
+     * are also recalculated from the ring once per window, so that rounding errors cannot accumulate over the file.
+     * The rows keep the labels of the csv rows.
+     */
+    private static class RollingStage implements Stage {
+        private final Function function;
+        private final List<DoubleColumn> columns;
+        private final int window;
+        private final double[][] ring;
+        private final double[] sums;
+        private final double[] compensations;
+        private final int[] nanCounts;
+        private final int[] positiveInfinityCounts;
+        private final int[] negativeInfinityCounts;
+        private final int[][] queues;
+        private final int[] queueStarts;
+        private final int[] queueSizes;
+        private long rows = 0;
+
+        private RollingStage(Function function, List<DoubleColumn> columns, int window) {
+            this.function = function;
+            this.columns = columns;
+            this.window = window;
+            int trackedColumns = function == Function.COUNT ? 0 : columns.size();
+            int queueColumns = function == Function.MIN || function == Function.MAX ? trackedColumns : 0;
+            int sumColumns = function == Function.MEAN || function == Function.SUM ? trackedColumns : 0;
+            this.ring = new double[trackedColumns][window];
+            this.sums = new double[sumColumns];
+            this.compensations = new double[sumColumns];
+            this.nanCounts = new int[trackedColumns];
+            this.positiveInfinityCounts = new int[sumColumns];
+            this.negativeInfinityCounts = new int[sumColumns];
+            this.queues = new int[queueColumns][window];
+            this.queueStarts = new int[queueColumns];
+            this.queueSizes = new int[queueColumns];
+        }
+
+        @Override
+        public void accept(String label, double[] values) {
+            int slot = (int) (rows % window);
+            long windowRows = Math.min(rows + 1, window);
+            rows++;
+            if (function == Function.COUNT) {
+                columns.get(0).add(windowRows);
+                return;
+            }
+
+            for (int c = 0; c < ring.length; c++) {
+                double value = values[c];
+                if (function == Function.MIN || function == Function.MAX) {
+                    columns.get(c).add(pushExtreme(c, slot, value));
+                } else {
+                    // the value that leaves the window is the one overwritten in the ring
+                    if (rows > window) addToSum(c, ring[c][slot], -1);
+                    ring[c][slot] = value;
+                    if (slot == window - 1) recalculateSum(c);
+                    else addToSum(c, value, 1);
+                    double sum = getSum(c);
+                    columns.get(c).add(function == Function.MEAN ? sum / windowRows : sum);
+                }
+            }
+        }
+
+        private void addToSum(int column, double value, int sign) {
+            if (Double.isNaN(value)) {
+                nanCounts[column] += sign;
+            } else if (value == Double.POSITIVE_INFINITY) {
+                positiveInfinityCounts[column] += sign;
+            } else if (value == Double.NEGATIVE_INFINITY) {
+                negativeInfinityCounts[column] += sign;
+            } else {
+                // Neumaier summation, the compensation collects the low bits lost in the sum
+                double summand = sign * value;
+                double sum = sums[column] + summand;
+                if (Math.abs(sums[column]) >= Math.abs(summand)) compensations[column] += (sums[column] - sum) + summand;
+                else compensations[column] += (summand - sum) + sums[column];
+                sums[column] = sum;
+            }
+        }
+
+        /**
+         * Called once the ring is full again, with the value of the current row already in the ring.
+         */
+        private void recalculateSum(int column) {
+            sums[column] = 0;
+            compensations[column] = 0;
+            nanCounts[column] = 0;
+            positiveInfinityCounts[column] = 0;
+            negativeInfinityCounts[column] = 0;
+            for (double value : ring[column]) addToSum(column, value, 1);
+        }
+
+        private double getSum(int column) {
+            if (nanCounts[column] > 0 || (positiveInfinityCounts[column] > 0 && negativeInfinityCounts[column] > 0))
+                return Double.NaN;
+            if (positiveInfinityCounts[column] > 0) return Double.POSITIVE_INFINITY;
+            if (negativeInfinityCounts[column] > 0) return Double.NEGATIVE_INFINITY;
+            return sums[column] + compensations[column];
+        }
+
+        private double pushExtreme(int column, int slot, double value) {
+            int[] queue = queues[column];
+            double[] values = ring[column];
+            boolean min = function == Function.MIN;
+
+            // the slot is reused by the new row, so the row leaving the window has to leave the queue first
+            if (queueSizes[column] > 0 && queue[queueStarts[column]] == slot) {
+                queueStarts[column] = (queueStarts[column] + 1) % window;
+                queueSizes[column]--;
+            }
+            if (rows > window && Double.isNaN(values[slot])) nanCounts[column]--;
+            values[slot] = value;
+            // like Math.min and Math.max, the result is NaN while the window contains NaN, which is never queued
+            if (Double.isNaN(value)) {
+                nanCounts[column]++;
+                return Double.NaN;
+            }
+            while (queueSizes[column] > 0) {
+                double last = values[queue[(queueStarts[column] + queueSizes[column] - 1) % window]];
+                if (min ? last < value : last > value) break;
+                queueSizes[column]--;
+            }
+            queue[(queueStarts[column] + queueSizes[column]) % window] = slot;
+            queueSizes[column]++;
+            return nanCounts[column] > 0 ? Double.NaN : values[queue[queueStarts[column]]];
+        }
+
+        @Override
+        public List<String> finish() {
+            return null;
+        }
+    }
+}
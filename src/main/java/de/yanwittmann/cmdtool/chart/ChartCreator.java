@@ -1,16 +1,14 @@
 package de.yanwittmann.cmdtool.chart;
 
-import de.yanwittmann.cmdtool.data.DataProvider;
 import de.yanwittmann.j2chartjs.quick.*;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
+import org.json.JSONObject;
 
 import java.awt.*;
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.Reader;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.*;
 
@@ -22,6 +20,14 @@ public class ChartCreator {
     private QuickChart<?, ?> chart;
     private String title;
     private boolean startAtZero = true;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxPoints = 0;
+    private ColumnCache columnCache;
+    private ChartAggregation aggregation;
+    private final List<ColumnFormula> formulas = new ArrayList<>();
+    private List<DoubleColumn> columns;
+    private List<String> labels;
+    private int[] labelRows;
 
     public void setCsvFile(File csvFile) {
         this.csvFile = csvFile;
@@ -43,10 +49,76 @@ public class ChartCreator {
         this.startAtZero = startAtZero;
     }
 
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param columnCache The cache to read the columns from instead of parsing the csv file, or <code>null</code> to
+     *                    always parse the file.
+     */
+    public void setColumnCache(ColumnCache columnCache) {
+        this.columnCache = columnCache;
+    }
+
+    /**
+     * @param aggregation The aggregation to apply to the rows of the csv file while reading it, or <code>null</code> to
+     *                    show every row.
+     */
+    public void setAggregation(ChartAggregation aggregation) {
+        this.aggregation = aggregation;
+    }
+
+    /**
+     * Adds a column that is calculated from the columns of the csv file and the columns added before it.
+     *
+     * @param definition The definition of the column, like <code>ratio = temp / hum * 100</code>.
+     * @throws IllegalArgumentException If the definition is not valid.
+     * @see ColumnFormula
+     */
+    public void addColumn(String definition) {
+        formulas.add(ColumnFormula.parse(definition));
+    }
+
+    /**
+     * @param maxPoints The maximum amount of rows to show in the chart, larger files are reduced using the
+     *                  {@link Downsampler}. <code>0</code> shows all rows.
+     */
+    public void setMaxPoints(int maxPoints) {
+        if (maxPoints != 0 && maxPoints < Downsampler.MIN_POINTS)
+            throw new IllegalArgumentException("The maximum amount of points has to be at least " + Downsampler.MIN_POINTS);
+        this.maxPoints = maxPoints;
+    }
+
+    /**
+     * Reads the csv file, the first row contains the names of the columns. Every column is stored as
+     * {@link DoubleColumn}, so the rows are never held in memory as records or boxed values.<br>
+     * Files that only contain numbers are parsed on multiple threads by the {@link NumericCsvReader}, all other files
+     * are read row by row using commons-csv. If a {@link ColumnCache} is set, the columns are only parsed if the cache
+     * has no entry for the file yet.<br>
+     * If a {@link ChartAggregation} is set, the file is aggregated while it is read instead and the columns only
+     * contain the aggregated rows.
+     */
     public void makeChart() throws IOException {
-        Reader reader = new FileReader(csvFile);
-        CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT);
-        Map<String, List<Double>> entries = new LinkedHashMap<>();
+        if (aggregation != null) {
+            ChartAggregation.Result result = aggregation.aggregate(csvFile);
+            columns = result.getColumns();
+            labels = result.getLabels();
+        } else {
+            columns = readColumns();
+            labels = null;
+        }
+        for (ColumnFormula formula : formulas) {
+            for (DoubleColumn column : columns)
+                if (column.getName().trim().equals(formula.getName()))
+                    throw new IllegalArgumentException("There already is a column named " + formula.getName());
+            columns.add(formula.evaluate(columns, threads));
+        }
+        labelRows = null;
+        if (maxPoints > 0 && !columns.isEmpty() && columns.get(0).size() > maxPoints) {
+            labelRows = Downsampler.selectRows(columns, maxPoints);
+            for (int i = 0; i < columns.size(); i++) columns.set(i, Downsampler.select(columns.get(i), labelRows));
+        }
 
         switch (chartType) {
             case "bar":
@@ -69,41 +141,73 @@ public class ChartCreator {
         chart.setBeginAtZero(startAtZero);
         if (title != null) chart.setTitle(title);
 
-        int rowIndex = 0;
-        for (CSVRecord record : csvParser.getRecords()) {
-            if (rowIndex == 0) {
-                for (int i = 0; true; i++) {
-                    try {
-                        entries.put(record.get(i), new ArrayList<>());
-                    } catch (Exception e) {
-                        break;
-                    }
-                }
-                rowIndex++;
-                continue;
-            }
-            List<String> headers = new ArrayList<>(entries.keySet());
-            for (int i = 0; i < headers.size(); i++) {
-                entries.get(headers.get(i)).add(Double.parseDouble(record.get(i).trim()));
-            }
-            chart.addLabels("Dataset " + rowIndex);
-            rowIndex++;
-        }
-
-        for (Map.Entry<String, List<Double>> entry : entries.entrySet()) {
+        // the labels and values are written by writeChart, the chart only contains placeholders for them
+        chart.addLabels(LABELS_PLACEHOLDER_VALUE);
+        List<Double> values = Collections.singletonList(DATA_PLACEHOLDER_VALUE);
+        for (DoubleColumn column : columns) {
             if (chart instanceof QuickBarChart)
-                ((QuickBarChart) chart).addDataset(entry.getKey(), entry.getValue());
+                ((QuickBarChart) chart).addDataset(column.getName(), values);
             else if (chart instanceof QuickLineChart)
-                ((QuickLineChart) chart).addDataset(entry.getKey(), entry.getValue());
+                ((QuickLineChart) chart).addDataset(column.getName(), values);
             else if (chart instanceof QuickPieChart)
-                ((QuickPieChart) chart).addDataset(entry.getKey(), entry.getValue());
+                ((QuickPieChart) chart).addDataset(column.getName(), values);
             else if (chart instanceof QuickDoughnutChart)
-                ((QuickDoughnutChart) chart).addDataset(entry.getKey(), entry.getValue());
+                ((QuickDoughnutChart) chart).addDataset(column.getName(), values);
             else if (chart instanceof QuickRadarChart)
-                ((QuickRadarChart) chart).addDataset(entry.getKey(), entry.getValue());
+                ((QuickRadarChart) chart).addDataset(column.getName(), values);
+        }
+    }
+
+    private List<DoubleColumn> readColumns() throws IOException {
+        if (columnCache == null) return parseColumns();
+
+        List<DoubleColumn> columns = null;
+        try {
+            columns = columnCache.read(csvFile);
+        } catch (IOException e) {
+            System.err.println("Unable to read cached columns: " + e.getMessage());
         }
+        if (columns != null) return columns;
+
+        columns = parseColumns();
+        try {
+            columnCache.write(csvFile, columns);
+        } catch (IOException e) {
+            System.err.println("Unable to cache columns: " + e.getMessage());
+        }
+        return columns;
+    }
+
+    private List<DoubleColumn> parseColumns() throws IOException {
+        List<DoubleColumn> columns = NumericCsvReader.read(csvFile, threads);
+        if (columns != null) return columns;
+
+        columns = new ArrayList<>();
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8));
+             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT)) {
+            Iterator<CSVRecord> records = csvParser.iterator();
+            if (!records.hasNext()) return columns;
+
+            for (String header : records.next()) columns.add(new DoubleColumn(header));
+            while (records.hasNext()) {
+                CSVRecord record = records.next();
+                if (record.size() < columns.size())
+                    throw new IOException("Line " + record.getRecordNumber() + " has " + record.size() + " values, expected " + columns.size());
+                for (int i = 0; i < columns.size(); i++) {
+                    columns.get(i).add(Double.parseDouble(record.get(i).trim()));
+                }
+            }
+        }
+        for (DoubleColumn column : columns) column.trimToSize();
+        return columns;
     }
 
+    /**
+     * Writes the chart to the out file, or to a new file in the temporary directory if none is set.<br>
+     * The page is written directly to the file: the template around the chart config, the config built by the chart
+     * and the labels and values of the columns in place of the placeholders in the config. The page is never built as
+     * one string, so only the columns have to be kept in memory.
+     */
     public void writeChart() throws IOException {
         if (chart == null) return;
         if (outFile == null)
@@ -111,19 +215,96 @@ public class ChartCreator {
                     new File(System.getProperty("java.io.tmpdir"), "generated-charts"),
                     "chart-" + csvFile.getName() + new Random().nextInt(10000) + ".html"
             );
+        outFile = outFile.getAbsoluteFile();
         if (!outFile.getParentFile().exists()) outFile.getParentFile().mkdirs();
-        DataProvider.writeFile(outFile,
-                CHART_EXPORT_TEMPLATE
-                        .replace("INSERT-CHART-CONFIG", chart.build())
-                        .replace("INSERT-CHART-TITLE", title == null ? "Generated Chart" : title + " - Chart")
-        );
+
+        int configIndex = CHART_EXPORT_TEMPLATE.indexOf(CONFIG_MARKER);
+        String head = CHART_EXPORT_TEMPLATE.substring(0, configIndex)
+                .replace("INSERT-CHART-TITLE", title == null ? "Generated Chart" : title + " - Chart");
+        String tail = CHART_EXPORT_TEMPLATE.substring(configIndex + CONFIG_MARKER.length());
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outFile), StandardCharsets.UTF_8), 1 << 16)) {
+            writer.write(head);
+            writeConfig(writer, chart.build());
+            writer.write(tail);
+        }
         System.out.println("Chart file written to " + outFile.getAbsolutePath());
     }
 
+    /**
+     * Writes the config, replacing the placeholder of the labels with the labels and the placeholders of the datasets
+     * with the values of the columns, in the order the datasets were added. Quotes are escaped in strings of the config,
+     * so the placeholders cannot appear anywhere else.
+     */
+    private void writeConfig(Writer writer, String config) throws IOException {
+        int position = 0;
+        int dataset = 0;
+        while (true) {
+            int dataIndex = config.indexOf(DATA_PLACEHOLDER, position);
+            int labelsIndex = config.indexOf(LABELS_PLACEHOLDER, position);
+            if (dataIndex == -1 && labelsIndex == -1) break;
+
+            if (labelsIndex == -1 || (dataIndex != -1 && dataIndex < labelsIndex)) {
+                if (dataset >= columns.size()) throw new IllegalStateException("The chart contains more datasets than columns");
+                writer.write(config, position, dataIndex - position);
+                writer.write("\"data\":[");
+                DoubleColumn column = columns.get(dataset++);
+                for (int i = 0; i < column.size(); i++) {
+                    if (i > 0) writer.write(',');
+                    writeNumber(writer, column.get(i));
+                }
+                writer.write(']');
+                position = dataIndex + DATA_PLACEHOLDER.length();
+            } else {
+                writer.write(config, position, labelsIndex - position);
+                writer.write("\"labels\":[");
+                int rowCount = columns.isEmpty() ? 0 : columns.get(0).size();
+                for (int i = 0; i < rowCount; i++) {
+                    if (i > 0) writer.write(',');
+                    int row = labelRows == null ? i : labelRows[i];
+                    if (labels != null) {
+                        writer.write(JSONObject.quote(labels.get(row)));
+                    } else {
+                        writer.write("\"Dataset ");
+                        writer.write(Integer.toString(row + 1));
+                        writer.write('"');
+                    }
+                }
+                writer.write(']');
+                position = labelsIndex + LABELS_PLACEHOLDER.length();
+            }
+        }
+        writer.write(config, position, config.length() - position);
+    }
+
+    /**
+     * Writes the value so that it is read back as the same value, using {@link Double#toString(double)} without the
+     * fraction of whole numbers. Values that are not finite are written as <code>null</code>, which is shown as gap in the chart.
+     */
+    private static void writeNumber(Writer writer, double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writer.write("null");
+        } else if (value == (long) value && Math.abs(value) < 1e15 && (value != 0 || 1 / value > 0)) {
+            writer.write(Long.toString((long) value));
+        } else {
+            String number = Double.toString(value);
+            int exponent = number.indexOf('E');
+            if (exponent != -1 && number.startsWith(".0", exponent - 2))
+                number = number.substring(0, exponent - 2) + number.substring(exponent);
+            else if (number.endsWith(".0")) number = number.substring(0, number.length() - 2);
+            writer.write(number);
+        }
+    }
+
     public void openChart() throws IOException {
         Desktop.getDesktop().open(outFile);
     }
 
+    private final static String CONFIG_MARKER = "INSERT-CHART-CONFIG";
+    private final static double DATA_PLACEHOLDER_VALUE = 0;
+    private final static String DATA_PLACEHOLDER = "\"data\":[0]";
+    private final static String LABELS_PLACEHOLDER_VALUE = "";
+    private final static String LABELS_PLACEHOLDER = "\"labels\":[\"\"]";
+
     private final static String CHART_EXPORT_TEMPLATE =
             "<html lang=\"en\">\n" +
             "<head>\n" +
@@ -0,0 +1,242 @@
+package de.yanwittmann.cmdtool.chart;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Stores the parsed columns of csv files in a directory, so that charting the same file again does not have to parse
+ * it again. An entry belongs to the path of the csv file and is only used while the size and modification time of the
+ * file are the same as when the entry was written.<br>
+ * Every entry is a binary file with a header, followed by one block of <code>double</code> values per column:
+ * <ol>
+ *     <li>The magic number, the format version, the size and modification time of the csv file, its path, the amount
+ *     of rows and columns and the names of the columns.</li>
+ *     <li>Padding up to the next multiple of 8 bytes.</li>
+ *     <li>The values of every column, one column after another, in little-endian byte order.</li>
+ * </ol>
+ * The entries are read using memory mapping. Only the {@link #MAX_ENTRIES} most recently written entries are kept.
+ */
+public class ColumnCache {
+
+    public final static long MIN_CACHED_FILE_SIZE = 1 << 20;
+    public final static int MAX_ENTRIES = 8;
+
+    private final static int MAGIC = 0x434D4443;
+    private final static int VERSION = 1;
+    private final static String EXTENSION = ".columns";
+    private final static int MAX_MAPPED_VALUES = 1 << 27;
+    private final static int INITIAL_HEADER_READ = 1 << 12;
+
+    private final File cacheDir;
+
+    public ColumnCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @param csvFile The csv file the columns were parsed from.
+     * @return The cached columns, or <code>null</code> if there is no entry for the current version of the file.
+     * @throws IOException If the entry exists but cannot be read.
+     */
+    public List<DoubleColumn> read(File csvFile) throws IOException {
+        File entry = getEntryFile(csvFile);
+        if (!entry.exists()) return null;
+        Key key = new Key(csvFile);
+
+        // the header is read without mapping the entry, a mapped file cannot be replaced on some systems until the
+        // mapping is garbage collected, so stale entries could not be written again
+        try (FileChannel channel = FileChannel.open(entry.toPath(), StandardOpenOption.READ)) {
+            Header header = null;
+            for (int length = (int) Math.min(channel.size(), INITIAL_HEADER_READ); header == null; length = (int) Math.min(channel.size(), length * 2L)) {
+                ByteBuffer buffer = readBlock(channel, length);
+                if (buffer.remaining() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+                if (buffer.getLong() != key.size || buffer.getLong() != key.lastModified) return null;
+                try {
+                    header = new Header(buffer);
+                } catch (BufferUnderflowException e) {
+                    if (length >= Math.min(channel.size(), Integer.MAX_VALUE)) return null;
+                }
+            }
+            if (!header.path.equals(key.path) || header.rows < 0 || header.columnCount < 0) return null;
+
+            int rows = header.rows;
+            List<String> names = header.names;
+            long position = header.end;
+            if (channel.size() - position != (long) rows * names.size() * Double.BYTES) return null;
+
+            List<DoubleColumn> columns = new ArrayList<>(names.size());
+            for (String name : names) {
+                double[] values = new double[rows];
+                for (int offset = 0; offset < rows; offset += MAX_MAPPED_VALUES) {
+                    int length = Math.min(MAX_MAPPED_VALUES, rows - offset);
+                    channel.map(FileChannel.MapMode.READ_ONLY, position, (long) length * Double.BYTES)
+                            .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(values, offset, length);
+                    position += (long) length * Double.BYTES;
+                }
+                columns.add(new DoubleColumn(name, values));
+            }
+            return columns;
+        }
+    }
+
+    private static ByteBuffer readBlock(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) == -1) break;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes an entry for the csv file and removes the oldest entries if there are more than {@link #MAX_ENTRIES}.
+     * Files smaller than {@link #MIN_CACHED_FILE_SIZE} are not cached.
+     *
+     * @param csvFile The csv file the columns were parsed from.
+     * @param columns The columns, all with the same amount of values.
+     * @throws IOException If the entry cannot be written.
+     */
+    public void write(File csvFile, List<DoubleColumn> columns) throws IOException {
+        Key key = new Key(csvFile);
+        if (key.size < MIN_CACHED_FILE_SIZE) return;
+        if (!cacheDir.exists() && !cacheDir.mkdirs())
+            throw new IOException("Unable to create cache directory " + cacheDir.getAbsolutePath());
+
+        int rows = columns.isEmpty() ? 0 : columns.get(0).size();
+        ByteBuffer header = ByteBuffer.allocate(headerSize(key, columns)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(key.size).putLong(key.lastModified);
+        writeString(header, key.path);
+        header.putInt(rows).putInt(columns.size());
+        for (DoubleColumn column : columns) writeString(header, column.getName());
+        header.position(header.capacity());
+        header.flip();
+
+        // written to a temporary file first, so that other processes never read half written entries
+        File entry = getEntryFile(csvFile);
+        Path temporary = Files.createTempFile(cacheDir.toPath(), entry.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) channel.write(header);
+                ByteBuffer block = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+                for (DoubleColumn column : columns) {
+                    if (column.size() != rows)
+                        throw new IllegalArgumentException("Column " + column.getName() + " has " + column.size() + " values, expected " + rows);
+                    for (int i = 0; i < rows; i++) {
+                        if (!block.hasRemaining()) writeBlock(channel, block);
+                        block.putDouble(column.get(i));
+                    }
+                }
+                writeBlock(channel, block);
+            }
+            try {
+                Files.move(temporary, entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        removeOldEntries();
+    }
+
+    private static void writeBlock(FileChannel channel, ByteBuffer block) throws IOException {
+        block.flip();
+        while (block.hasRemaining()) channel.write(block);
+        block.clear();
+    }
+
+    private void removeOldEntries() {
+        File[] entries = cacheDir.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (entries == null || entries.length <= MAX_ENTRIES) return;
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = MAX_ENTRIES; i < entries.length; i++) entries[i].delete();
+    }
+
+    private File getEntryFile(File csvFile) throws IOException {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(csvFile.getCanonicalPath().getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) name.append(String.format("%02x", b));
+            return new File(cacheDir, name + EXTENSION);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    private static int headerSize(Key key, List<DoubleColumn> columns) {
+        int size = 4 + 4 + 8 + 8 + stringSize(key.path) + 4 + 4;
+        for (DoubleColumn column : columns) size += stringSize(column.getName());
+        return align(size);
+    }
+
+    private static int align(int position) {
+        return (position + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+    }
+
+    private static int stringSize(String string) {
+        return 4 + string.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void writeString(ByteBuffer buffer, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new BufferUnderflowException();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The part of the header of an entry after the size and modification time of the csv file.
+     */
+    private static class Header {
+        private final String path;
+        private final int rows;
+        private final int columnCount;
+        private final List<String> names = new ArrayList<>();
+        private final long end;
+
+        /**
+         * @throws BufferUnderflowException If the buffer does not contain the whole header.
+         */
+        private Header(ByteBuffer buffer) {
+            this.path = readString(buffer);
+            this.rows = buffer.getInt();
+            this.columnCount = buffer.getInt();
+            for (int i = 0; i < columnCount; i++) names.add(readString(buffer));
+            this.end = align(buffer.position());
+        }
+    }
+
+    /**
+     * The version of a csv file an entry belongs to.
+     */
+    private static class Key {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        private Key(File csvFile) throws IOException {
+            Path file = csvFile.toPath();
+            this.path = csvFile.getCanonicalPath();
+            this.size = Files.size(file);
+            this.lastModified = Files.getLastModifiedTime(file).toMillis();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package de.yanwittmann.cmdtool.chart;
+
+import com.fathzer.soft.javaluator.AbstractEvaluator;
+import com.fathzer.soft.javaluator.Constant;
+import com.fathzer.soft.javaluator.DoubleEvaluator;
+import com.fathzer.soft.javaluator.Function;
+import com.fathzer.soft.javaluator.Operator;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * A column that is calculated from other columns, defined as <code>name = expression</code>. The expression uses the
+ * operators, functions and constants of the {@link DoubleEvaluator}, other columns are referenced by their name or by
+ * their position, like <code>$1</code> for the first column. Numbers may use the scientific notation.<br>
+ * The expression is parsed once into a tree. The tree is evaluated for blocks of rows at a time, where every operator
+ * is applied to a whole block of values in one loop, instead of evaluating the expression for every row. Functions are
+ * evaluated by the {@link DoubleEvaluator} for every row of a block, so they behave exactly the same, except that
+ * invalid arguments result in <code>NaN</code> for that row instead of an error.
+ */
+public class ColumnFormula {
+
+    private final static int BLOCK_ROWS = 4096;
+    private final static int TASK_BLOCKS = 64;
+
+    private final static ScalarEvaluator SCALAR_EVALUATOR = new ScalarEvaluator();
+    private final static TreeBuilder TREE_BUILDER = new TreeBuilder();
+
+    private final String name;
+    private final String expression;
+    private final Node root;
+
+    private ColumnFormula(String name, String expression, Node root) {
+        this.name = name;
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * @param definition The definition of the column, like <code>ratio = temp / hum * 100</code>.
+     * @return The parsed formula.
+     * @throws IllegalArgumentException If the definition is not valid.
+     */
+    public static ColumnFormula parse(String definition) {
+        int assignment = definition.indexOf('=');
+        if (assignment == -1)
+            throw new IllegalArgumentException("Column definitions need to have the form [name] = [expression]: " + definition);
+        String name = definition.substring(0, assignment).trim();
+        String expression = definition.substring(assignment + 1).trim();
+        if (name.isEmpty()) throw new IllegalArgumentException("Missing column name: " + definition);
+        if (expression.isEmpty()) throw new IllegalArgumentException("Missing expression for column " + name);
+
+        Node root;
+        try {
+            root = TREE_BUILDER.evaluate(expression);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid expression for column " + name + ": " + expression
+                                               + (e.getMessage() == null ? "" : " (" + e.getMessage() + ")"), e);
+        }
+        return new ColumnFormula(name, expression, root);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Calculates the values of the column for all rows.
+     *
+     * @param columns The columns that may be referenced by the expression, all with the same amount of values.
+     * @param threads The amount of threads to use, <code>1</code> evaluates all rows on the calling thread.
+     * @return The calculated column.
+     * @throws IllegalArgumentException If the expression references a column that does not exist.
+     */
+    public DoubleColumn evaluate(List<DoubleColumn> columns, int threads) {
+        int rows = columns.isEmpty() ? 0 : columns.get(0).size();
+        Map<String, double[]> columnsByName = new HashMap<>();
+        List<double[]> columnsByPosition = new ArrayList<>();
+        for (DoubleColumn column : columns) {
+            if (column.size() != rows)
+                throw new IllegalArgumentException("Column " + column.getName() + " has " + column.size() + " values, expected " + rows);
+            columnsByName.putIfAbsent(column.getName().trim(), column.getValues());
+            columnsByPosition.add(column.getValues());
+        }
+        root.resolve(columnsByName, columnsByPosition);
+
+        double[] values = new double[rows];
+        int blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        int tasks = (blocks + TASK_BLOCKS - 1) / TASK_BLOCKS;
+        if (threads <= 1 || tasks <= 1) {
+            evaluateBlocks(0, blocks, rows, values);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.submit(() -> IntStream.range(0, tasks).parallel().forEach(task ->
+                        evaluateBlocks(task * TASK_BLOCKS, Math.min(blocks, (task + 1) * TASK_BLOCKS), rows, values)
+                )).join();
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return new DoubleColumn(name, values);
+    }
+
+    private void evaluateBlocks(int startBlock, int endBlock, int rows, double[] values) {
+        Block block = new Block();
+        for (int b = startBlock; b < endBlock; b++) {
+            block.start = b * BLOCK_ROWS;
+            block.length = Math.min(BLOCK_ROWS, rows - block.start);
+            double[] result = block.acquire();
+            root.evaluate(block, result);
+            System.arraycopy(result, 0, values, block.start, block.length);
+            block.release(result);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " = " + expression;
+    }
+
+    /**
+     * The rows that are currently evaluated and the buffers for the intermediate values of a thread.
+     */
+    private static class Block {
+        private final Deque<double[]> buffers = new ArrayDeque<>();
+        private int start;
+        private int length;
+
+        private double[] acquire() {
+            double[] buffer = buffers.poll();
+            return buffer == null ? new double[BLOCK_ROWS] : buffer;
+        }
+
+        private void release(double[] buffer) {
+            buffers.push(buffer);
+        }
+    }
+
+    private abstract static class Node {
+        /**
+         * Writes the values of the node for the rows of the block to the first <code>block.length</code> elements of
+         * <code>out</code>.
+         */
+        abstract void evaluate(Block block, double[] out);
+
+        void resolve(Map<String, double[]> columnsByName, List<double[]> columnsByPosition) {
+        }
+
+        boolean isConstant() {
+            return false;
+        }
+    }
+
+    private static class ConstantNode extends Node {
+        private final double value;
+
+        private ConstantNode(double value) {
+            this.value = value;
+        }
+
+        @Override
+        void evaluate(Block block, double[] out) {
+            Arrays.fill(out, 0, block.length, value);
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+    }
+
+    private static class ColumnNode extends Node {
+        private final String reference;
+        private double[] values;
+
+        private ColumnNode(String reference) {
+            this.reference = reference;
+        }
+
+        @Override
+        void resolve(Map<String, double[]> columnsByName, List<double[]> columnsByPosition) {
+            values = columnsByName.get(reference);
+            if (values == null && reference.startsWith("$")) {
+                try {
+                    int position = Integer.parseInt(reference.substring(1));
+                    if (position >= 1 && position <= columnsByPosition.size()) values = columnsByPosition.get(position - 1);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            if (values == null) throw new IllegalArgumentException("Unknown column: " + reference);
+        }
+
+        @Override
+        void evaluate(Block block, double[] out) {
+            System.arraycopy(values, block.start, out, 0, block.length);
+        }
+    }
+
+    private static class OperatorNode extends Node {
+        private final Operator operator;
+        private final Node left;
+        private final Node right;
+
+        private OperatorNode(Operator operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        void resolve(Map<String, double[]> columnsByName, List<double[]> columnsByPosition) {
+            left.resolve(columnsByName, columnsByPosition);
+            if (right != null) right.resolve(columnsByName, columnsByPosition);
+        }
+
+        @Override
+        void evaluate(Block block, double[] out) {
+            left.evaluate(block, out);
+            int length = block.length;
+            if (right == null) {
+                for (int i = 0; i < length; i++) out[i] = -out[i];
+                return;
+            }
+
+            double[] operand = block.acquire();
+            right.evaluate(block, operand);
+            if (operator == DoubleEvaluator.PLUS) {
+                for (int i = 0; i < length; i++) out[i] += operand[i];
+            } else if (operator == DoubleEvaluator.MINUS) {
+                for (int i = 0; i < length; i++) out[i] -= operand[i];
+            } else if (operator == DoubleEvaluator.MULTIPLY) {
+                for (int i = 0; i < length; i++) out[i] *= operand[i];
+            } else if (operator == DoubleEvaluator.DIVIDE) {
+                for (int i = 0; i < length; i++) out[i] /= operand[i];
+            } else if (operator == DoubleEvaluator.MODULO) {
+                for (int i = 0; i < length; i++) out[i] %= operand[i];
+            } else {
+                for (int i = 0; i < length; i++) out[i] = Math.pow(out[i], operand[i]);
+            }
+            block.release(operand);
+        }
+    }
+
+    /**
+     * A function of the {@link DoubleEvaluator}, or an operator that is not one of the default operators.
+     */
+    private static class ScalarNode extends Node {
+        private final Operator operator;
+        private final Function function;
+        private final Node[] arguments;
+
+        private ScalarNode(Operator operator, Function function, Node[] arguments) {
+            this.operator = operator;
+            this.function = function;
+            this.arguments = arguments;
+        }
+
+        @Override
+        void resolve(Map<String, double[]> columnsByName, List<double[]> columnsByPosition) {
+            for (Node argument : arguments) argument.resolve(columnsByName, columnsByPosition);
+        }
+
+        @Override
+        boolean isConstant() {
+            if (function == DoubleEvaluator.RANDOM) return false;
+            for (Node argument : arguments) if (!argument.isConstant()) return false;
+            return true;
+        }
+
+        @Override
+        void evaluate(Block block, double[] out) {
+            double[][] values = new double[arguments.length][];
+            for (int a = 0; a < arguments.length; a++) {
+                values[a] = block.acquire();
+                arguments[a].evaluate(block, values[a]);
+            }
+            List<Double> row = new ArrayList<>(arguments.length);
+            for (int i = 0; i < block.length; i++) {
+                row.clear();
+                for (double[] argument : values) row.add(argument[i]);
+                try {
+                    out[i] = operator != null
+                            ? SCALAR_EVALUATOR.apply(operator, row.iterator())
+                            : SCALAR_EVALUATOR.apply(function, row.iterator());
+                } catch (IllegalArgumentException e) {
+                    // the evaluator rejects invalid arguments, like ln(-1), which is only a gap in a chart
+                    out[i] = Double.NaN;
+                }
+            }
+            for (double[] argument : values) block.release(argument);
+        }
+    }
+
+    /**
+     * Gives access to the literals, constants, operators and functions of the {@link DoubleEvaluator}.
+     */
+    private static class ScalarEvaluator extends DoubleEvaluator {
+        private ScalarEvaluator() {
+            super(DoubleEvaluator.getDefaultParameters(), true);
+        }
+
+        private Iterator<String> tokens(String expression) {
+            return tokenize(expression);
+        }
+
+        private Double literal(String literal) {
+            return toValue(literal, null);
+        }
+
+        private double constant(Constant constant) {
+            return evaluate(constant, null);
+        }
+
+        private double apply(Operator operator, Iterator<Double> operands) {
+            return evaluate(operator, operands, null);
+        }
+
+        private double apply(Function function, Iterator<Double> arguments) {
+            return evaluate(function, arguments, null);
+        }
+    }
+
+    /**
+     * Parses an expression into a tree of {@link Node}s, using the syntax of the {@link DoubleEvaluator}. Constant parts
+     * of the expression are calculated while parsing.
+     */
+    private static class TreeBuilder extends AbstractEvaluator<Node> {
+        private final static Set<Operator> VECTORIZED_OPERATORS = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        static {
+            VECTORIZED_OPERATORS.addAll(Arrays.asList(DoubleEvaluator.NEGATE, DoubleEvaluator.NEGATE_HIGH,
+                    DoubleEvaluator.PLUS, DoubleEvaluator.MINUS, DoubleEvaluator.MULTIPLY, DoubleEvaluator.DIVIDE,
+                    DoubleEvaluator.MODULO, DoubleEvaluator.EXPONENT));
+        }
+
+        private TreeBuilder() {
+            super(DoubleEvaluator.getDefaultParameters());
+        }
+
+        @Override
+        protected Iterator<String> tokenize(String expression) {
+            return SCALAR_EVALUATOR.tokens(expression);
+        }
+
+        @Override
+        protected Node toValue(String literal, Object evaluationContext) {
+            try {
+                return new ConstantNode(SCALAR_EVALUATOR.literal(literal));
+            } catch (IllegalArgumentException e) {
+                return new ColumnNode(literal.trim());
+            }
+        }
+
+        @Override
+        protected Node evaluate(Constant constant, Object evaluationContext) {
+            return new ConstantNode(SCALAR_EVALUATOR.constant(constant));
+        }
+
+        @Override
+        protected Node evaluate(Operator operator, Iterator<Node> operands, Object evaluationContext) {
+            Node left = operands.next();
+            Node right = operator.getOperandCount() == 2 ? operands.next() : null;
+            Node node = VECTORIZED_OPERATORS.contains(operator)
+                    ? new OperatorNode(operator, left, right)
+                    : new ScalarNode(operator, null, right == null ? new Node[]{left} : new Node[]{left, right});
+            return fold(node, left.isConstant() && (right == null || right.isConstant()));
+        }
+
+        @Override
+        protected Node evaluate(Function function, Iterator<Node> arguments, Object evaluationContext) {
+            List<Node> nodes = new ArrayList<>();
+            arguments.forEachRemaining(nodes::add);
+            ScalarNode node = new ScalarNode(null, function, nodes.toArray(new Node[0]));
+            return fold(node, node.isConstant());
+        }
+
+        private static Node fold(Node node, boolean constant) {
+            if (!constant) return node;
+            Block block = new Block();
+            block.length = 1;
+            double[] out = new double[1];
+            node.evaluate(block, out);
+            return new ConstantNode(out[0]);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package de.yanwittmann.cmdtool.chart;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A column of a csv file, stored as growable <code>double[]</code> instead of a list of boxed values. The array grows
+ * by half of its size whenever it is full, so that appending values is amortized constant time.
+ */
+public class DoubleColumn {
+
+    private final static int DEFAULT_CAPACITY = 64;
+
+    private final String name;
+    private double[] values;
+    private int size = 0;
+
+    public DoubleColumn(String name) {
+        this(name, DEFAULT_CAPACITY);
+    }
+
+    public DoubleColumn(String name, int initialCapacity) {
+        if (initialCapacity < 0) throw new IllegalArgumentException("Capacity must not be negative: " + initialCapacity);
+        this.name = name;
+        this.values = new double[Math.max(initialCapacity, 1)];
+    }
+
+    /**
+     * Creates a column that uses the given array to store its values, without copying it.
+     */
+    public DoubleColumn(String name, double[] values) {
+        this.name = name;
+        this.values = values.length == 0 ? new double[1] : values;
+        this.size = values.length;
+    }
+
+    public void add(double value) {
+        if (size == values.length) grow(size + 1);
+        values[size++] = value;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = values.length + (values.length >> 1) + 1;
+        if (capacity < minCapacity) capacity = minCapacity;
+        if (capacity < 0) capacity = Integer.MAX_VALUE - 8;
+        if (capacity < minCapacity) throw new IllegalStateException("Column " + name + " has too many values");
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    /**
+     * Appends all values of another column to this column.
+     */
+    public void addAll(DoubleColumn column) {
+        if (column.size == 0) return;
+        if (size + column.size < 0) throw new IllegalStateException("Column " + name + " has too many values");
+        if (size + column.size > values.length) grow(size + column.size);
+        System.arraycopy(column.values, 0, values, size, column.size);
+        size += column.size;
+    }
+
+    public double get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for column " + name + " with " + size + " values");
+        return values[index];
+    }
+
+    /**
+     * @return The array the values are stored in, it may be longer than the amount of values.
+     */
+    double[] getValues() {
+        return values;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return A copy of the values, with the length of the amount of values.
+     */
+    public double[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Removes the unused capacity of the column.
+     */
+    public void trimToSize() {
+        if (values.length > size) values = Arrays.copyOf(values, Math.max(size, 1));
+    }
+
+    /**
+     * @return A read-only list view of the values. The values are boxed when they are read, not stored boxed.
+     */
+    public List<Double> asList() {
+        return new AbstractList<Double>() {
+            @Override
+            public Double get(int index) {
+                return DoubleColumn.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + size + " values)";
+    }
+}
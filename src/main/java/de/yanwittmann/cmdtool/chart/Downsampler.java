@@ -0,0 +1,117 @@
+package de.yanwittmann.cmdtool.chart;
+
+import java.util.List;
+
+/**
+ * Reduces the amount of rows of a chart using the Largest-Triangle-Three-Buckets algorithm, so that large csv files
+ * still result in charts that a browser can render, while keeping the shape of the series.<br>
+ * The first and last row are always kept. All other rows are split into buckets of the same size and one row is picked
+ * from every bucket: the one that forms the largest triangle with the row picked from the previous bucket and the
+ * average of the next bucket.<br>
+ * All series of a chart share the same labels, so the same rows are picked for all of them. The area of a row is the
+ * sum of the areas in every series, each divided by the range of its series so that series with large values do not
+ * decide alone.<br>
+ * Values that are not finite, like empty results of calculated columns, are left out of the averages and ranges. A
+ * series only adds to the area of a row if the triangle of the row has no such values in it.
+ */
+public abstract class Downsampler {
+
+    public final static int MIN_POINTS = 3;
+
+    /**
+     * @param columns   The series, all with the same amount of values.
+     * @param maxPoints The maximum amount of rows to keep, at least {@link #MIN_POINTS}.
+     * @return The indices of the rows to keep in ascending order, or all indices if there are not more than
+     * <code>maxPoints</code> rows.
+     */
+    public static int[] selectRows(List<DoubleColumn> columns, int maxPoints) {
+        if (maxPoints < MIN_POINTS)
+            throw new IllegalArgumentException("At least " + MIN_POINTS + " points are required to downsample, got " + maxPoints);
+        int rows = columns.isEmpty() ? 0 : columns.get(0).size();
+        for (DoubleColumn column : columns)
+            if (column.size() != rows)
+                throw new IllegalArgumentException("Column " + column.getName() + " has " + column.size() + " values, expected " + rows);
+
+        if (rows <= maxPoints) {
+            int[] all = new int[rows];
+            for (int i = 0; i < rows; i++) all[i] = i;
+            return all;
+        }
+
+        DoubleColumn[] series = columns.toArray(new DoubleColumn[0]);
+        double[] scales = new double[series.length];
+        for (int s = 0; s < series.length; s++) scales[s] = 1 / range(series[s]);
+
+        int[] selected = new int[maxPoints];
+        double bucketSize = (double) (rows - 2) / (maxPoints - 2);
+        int previous = 0;
+        double[] nextAverages = new double[series.length];
+        int lastBucket = maxPoints - 3;
+        for (int bucket = 0; bucket <= lastBucket; bucket++) {
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = bucketEnd(bucket, lastBucket, bucketSize, rows);
+
+            // the last row is the next bucket of the last bucket
+            int nextStart = end;
+            int nextEnd = bucket == lastBucket ? rows : bucketEnd(bucket + 1, lastBucket, bucketSize, rows);
+            double nextX = (nextStart + nextEnd - 1) / 2.0;
+            for (int s = 0; s < series.length; s++) {
+                double sum = 0;
+                int count = 0;
+                for (int i = nextStart; i < nextEnd; i++) {
+                    double value = series[s].get(i);
+                    if (Double.isFinite(value)) {
+                        sum += value;
+                        count++;
+                    }
+                }
+                nextAverages[s] = count > 0 ? sum / count : Double.NaN;
+            }
+
+            int best = start;
+            double bestArea = -1;
+            for (int i = start; i < end; i++) {
+                double area = 0;
+                for (int s = 0; s < series.length; s++) {
+                    double previousY = series[s].get(previous);
+                    double y = series[s].get(i);
+                    if (!Double.isFinite(previousY) || !Double.isFinite(y) || Double.isNaN(nextAverages[s])) continue;
+                    area += Math.abs((previous - nextX) * (y - previousY) - (previous - i) * (nextAverages[s] - previousY)) * scales[s];
+                }
+                if (area > bestArea) {
+                    bestArea = area;
+                    best = i;
+                }
+            }
+            selected[bucket + 1] = best;
+            previous = best;
+        }
+        selected[maxPoints - 1] = rows - 1;
+        return selected;
+    }
+
+    private static int bucketEnd(int bucket, int lastBucket, double bucketSize, int rows) {
+        return bucket == lastBucket ? rows - 1 : (int) ((bucket + 1) * bucketSize) + 1;
+    }
+
+    /**
+     * @return The values at the given indices.
+     */
+    public static DoubleColumn select(DoubleColumn column, int[] indices) {
+        DoubleColumn selected = new DoubleColumn(column.getName(), indices.length);
+        for (int index : indices) selected.add(column.get(index));
+        return selected;
+    }
+
+    private static double range(DoubleColumn column) {
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < column.size(); i++) {
+            double value = column.get(i);
+            if (!Double.isFinite(value)) continue;
+            if (value < min) min = value;
+            if (value > max) max = value;
+        }
+        double range = max - min;
+        return range > 0 && !Double.isInfinite(range) ? range : 1;
+    }
+}
@@ -0,0 +1,258 @@
+package de.yanwittmann.cmdtool.chart;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Reads csv files that only contain numbers below the header row, without going through a {@link CSVParser}.<br>
+ * The file is memory-mapped and split into chunks at line breaks, the chunks are parsed on multiple threads directly
+ * from the bytes of the file and then merged into one {@link DoubleColumn} per column.<br>
+ * Only files that are simple enough are read this way. As soon as a chunk contains something that would need the rules
+ * of a real csv parser, like quotes, rows with the wrong amount of values or values that are not numbers,
+ * {@link #read(File, int)} returns <code>null</code> and the file has to be read using commons-csv instead. The header
+ * row may contain quotes, it is always parsed using commons-csv.
+ */
+public abstract class NumericCsvReader {
+
+    private final static long MIN_CHUNK_BYTES = 1 << 20;
+    private final static long MAX_CHUNK_BYTES = 1 << 28;
+    private final static int MAX_HEADER_BYTES = 1 << 20;
+
+    private final static long MAX_EXACT_MANTISSA = 1L << 53;
+    private final static double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * @param file    The csv file to read, the first row contains the names of the columns.
+     * @param threads The amount of threads to parse the chunks on, <code>1</code> parses the file on the calling thread.
+     * @return The columns of the file, or <code>null</code> if the file has to be read using a csv parser.
+     * @throws IOException If the file cannot be read.
+     */
+    public static List<DoubleColumn> read(File file, int threads) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long dataStart = findLineEnd(channel, 0, MAX_HEADER_BYTES);
+            if (dataStart <= 0) return null;
+
+            List<String> headers = parseHeader(channel, dataStart);
+            if (headers == null) return null;
+
+            List<long[]> chunks = splitIntoChunks(channel, dataStart, fileSize, threads);
+            if (chunks == null) return null;
+
+            List<DoubleColumn[]> parsedChunks = new ArrayList<>(chunks.size());
+            if (threads <= 1 || chunks.size() == 1) {
+                for (long[] chunk : chunks) {
+                    DoubleColumn[] parsed = parseChunk(channel, chunk[0], chunk[1], headers);
+                    if (parsed == null) return null;
+                    parsedChunks.add(parsed);
+                }
+            } else {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    Deque<ForkJoinTask<DoubleColumn[]>> tasks = new ArrayDeque<>();
+                    for (long[] chunk : chunks)
+                        tasks.add(pool.submit(() -> parseChunk(channel, chunk[0], chunk[1], headers)));
+                    while (!tasks.isEmpty()) {
+                        DoubleColumn[] parsed = tasks.poll().join();
+                        if (parsed == null) return null;
+                        parsedChunks.add(parsed);
+                    }
+                } finally {
+                    pool.shutdownNow();
+                }
+            }
+
+            return mergeChunks(headers, parsedChunks);
+        }
+    }
+
+    /**
+     * @return The position after the first line break at or after <code>position</code>, the size of the file if there
+     * is none or <code>-1</code> if there is no line break in the next <code>maxBytes</code> bytes.
+     */
+    private static long findLineEnd(FileChannel channel, long position, long maxBytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long searched = 0;
+        while (searched < maxBytes) {
+            buffer.clear();
+            int read = channel.read(buffer, position + searched);
+            if (read == -1) return channel.size();
+            for (int i = 0; i < read; i++)
+                if (buffer.get(i) == '\n') return position + searched + i + 1;
+            searched += read;
+        }
+        return -1;
+    }
+
+    private static List<String> parseHeader(FileChannel channel, long headerEnd) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) headerEnd);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, buffer.position()) == -1) return null;
+        String line = new String(buffer.array(), StandardCharsets.UTF_8);
+
+        // a line break inside of quotes is part of the header
+        int quotes = 0;
+        for (int i = 0; i < line.length(); i++) if (line.charAt(i) == '"') quotes++;
+        if (quotes % 2 != 0 || line.trim().isEmpty()) return null;
+
+        try (CSVParser parser = CSVParser.parse(line, CSVFormat.DEFAULT)) {
+            List<CSVRecord> records = parser.getRecords();
+            if (records.size() != 1) return null;
+            List<String> headers = new ArrayList<>();
+            for (String header : records.get(0)) headers.add(header);
+            return headers;
+        }
+    }
+
+    /**
+     * Splits the data rows into chunks that start at the beginning of a line. There are a few chunks per thread, so
+     * that the threads are kept busy if some chunks are parsed faster than others.
+     *
+     * @return The start and end of every chunk, or <code>null</code> if a chunk would be too large to be mapped.
+     */
+    private static List<long[]> splitIntoChunks(FileChannel channel, long dataStart, long fileSize, int threads) throws IOException {
+        long dataSize = fileSize - dataStart;
+        long chunkCount = Math.max(1, Math.min(threads * 4L, dataSize / MIN_CHUNK_BYTES));
+        chunkCount = Math.max(chunkCount, (dataSize + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+
+        List<long[]> chunks = new ArrayList<>();
+        long start = dataStart;
+        for (long i = 1; i <= chunkCount && start < fileSize; i++) {
+            long end = i == chunkCount ? fileSize : findLineEnd(channel, Math.max(start, dataStart + dataSize / chunkCount * i - 1), Long.MAX_VALUE);
+            if (end - start > Integer.MAX_VALUE) return null;
+            if (end > start) chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * @return The values of the rows in the chunk, or <code>null</code> if the chunk cannot be parsed without a csv
+     * parser.
+     */
+    private static DoubleColumn[] parseChunk(FileChannel channel, long start, long end, List<String> headers) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int length = buffer.limit();
+        int columnCount = headers.size();
+        DoubleColumn[] columns = new DoubleColumn[columnCount];
+        int estimatedRows = Math.max(16, length / Math.max(1, columnCount * 8));
+        for (int i = 0; i < columnCount; i++) columns[i] = new DoubleColumn(headers.get(i), estimatedRows);
+
+        int position = 0;
+        while (position < length) {
+            int lineEnd = position;
+            while (lineEnd < length && buffer.get(lineEnd) != '\n') lineEnd++;
+            int contentEnd = lineEnd > position && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+
+            if (contentEnd > position) {
+                int fieldStart = position;
+                for (int column = 0; column < columnCount; column++) {
+                    int fieldEnd = fieldStart;
+                    while (fieldEnd < contentEnd && buffer.get(fieldEnd) != ',') fieldEnd++;
+                    // the last column ends the line, other columns have to be followed by a separator
+                    if ((column == columnCount - 1) != (fieldEnd == contentEnd)) return null;
+                    try {
+                        columns[column].add(parseDouble(buffer, fieldStart, fieldEnd));
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    fieldStart = fieldEnd + 1;
+                }
+            }
+            position = lineEnd + 1;
+        }
+        return columns;
+    }
+
+    /**
+     * Parses a value the same way as {@link Double#parseDouble(String)} after trimming it. Simple decimal numbers are
+     * parsed from the bytes directly, if the result can be calculated exactly using a single multiplication or
+     * division. All other values are converted to a string and parsed by {@link Double#parseDouble(String)}.
+     *
+     * @throws NumberFormatException If the value is not a number.
+     */
+    private static double parseDouble(ByteBuffer buffer, int start, int end) {
+        while (start < end && (buffer.get(start) & 0xFF) <= ' ') start++;
+        while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') end--;
+
+        int position = start;
+        boolean negative = false;
+        if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+'))
+            negative = buffer.get(position++) == '-';
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        for (; position < end; position++) {
+            byte b = buffer.get(position);
+            if (b >= '0' && b <= '9') {
+                if (mantissa > (MAX_EXACT_MANTISSA - 10) / 10) return parseSlow(buffer, start, end);
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fraction) exponent--;
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else if ((b == 'e' || b == 'E') && digits > 0) {
+                position++;
+                boolean negativeExponent = false;
+                if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+'))
+                    negativeExponent = buffer.get(position++) == '-';
+                if (position == end || end - position > 4) return parseSlow(buffer, start, end);
+                int value = 0;
+                for (; position < end; position++) {
+                    byte e = buffer.get(position);
+                    if (e < '0' || e > '9') return parseSlow(buffer, start, end);
+                    value = value * 10 + (e - '0');
+                }
+                exponent += negativeExponent ? -value : value;
+                break;
+            } else {
+                return parseSlow(buffer, start, end);
+            }
+        }
+        if (digits == 0 || exponent < -22 || exponent > 22) return parseSlow(buffer, start, end);
+
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    private static double parseSlow(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) bytes[i - start] = buffer.get(i);
+        return Double.parseDouble(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static List<DoubleColumn> mergeChunks(List<String> headers, List<DoubleColumn[]> parsedChunks) {
+        long rows = 0;
+        for (DoubleColumn[] chunk : parsedChunks) rows += chunk.length == 0 ? 0 : chunk[0].size();
+        if (rows > Integer.MAX_VALUE - 8) throw new IllegalStateException("The csv file has too many rows: " + rows);
+
+        List<DoubleColumn> columns = new ArrayList<>(headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            DoubleColumn column = new DoubleColumn(headers.get(i), (int) rows);
+            for (DoubleColumn[] chunk : parsedChunks) column.addAll(chunk[i]);
+            for (DoubleColumn[] chunk : parsedChunks) chunk[i] = null;
+            columns.add(column);
+        }
+        return columns;
+    }
+}
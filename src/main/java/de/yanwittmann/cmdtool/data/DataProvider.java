@@ -69,6 +69,20 @@ public class DataProvider {
         }
     }
 
+    /**
+     * @return The directory to store the parsed columns of csv files in, so that they do not have to be parsed again.
+     */
+    public File getCsvCacheDir() {
+        return new File(dataDir, DIRNAME_CSV_CACHE);
+    }
+
+    /**
+     * @return The file the command server listening on the port stores its token in.
+     */
+    public File getServerTokenFile(int port) {
+        return new File(dataDir, FILENAME_SERVER_TOKEN_PREFIX + port + FILENAME_SERVER_TOKEN_SUFFIX);
+    }
+
     public File pickFile(String filterName, String... filters) {
         JnaFileChooser fc = new JnaFileChooser();
         if (filterName != null && filterName.length() > 0)
@@ -78,6 +92,9 @@ public class DataProvider {
     }
 
     private final static String FILENAME_GENERAL_DATA = "data";
+    private final static String DIRNAME_CSV_CACHE = "csv-cache";
+    private final static String FILENAME_SERVER_TOKEN_PREFIX = "server-";
+    private final static String FILENAME_SERVER_TOKEN_SUFFIX = ".token";
 
     public static DataProvider createMainDataProvider() {
         String os = System.getProperty("os.name").toLowerCase();
@@ -0,0 +1,392 @@
+package de.yanwittmann.cmdtool.math;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A reduced ordered binary decision diagram (ROBDD). Every node is identified by an integer id, the nodes
+ * {@link #FALSE} and {@link #TRUE} are the terminals. Nodes are stored in primitive arrays and are hash-consed using a
+ * unique table, so that two nodes with the same variable and children always have the same id. Because of that, every
+ * function has exactly one node for a fixed variable order:
+ * <ul>
+ *     <li>two expressions are equivalent if their nodes are the same</li>
+ *     <li>an expression is a tautology if its node is {@link #TRUE}</li>
+ *     <li>the models can be counted in linear time of the size of the diagram</li>
+ * </ul>
+ * All operations are implemented using the if-then-else operator, which caches its results.<br>
+ * The variables are identified by the same bits the {@link BooleanExpressionCompiler} assigns to them, the order in
+ * which they are tested is given by the variable order. A good order can make the diagram exponentially smaller, see
+ * {@link #getVariableOrder(BooleanExpression, int)}.
+ */
+public class BinaryDecisionDiagram {
+
+    public final static int FALSE = 0;
+    public final static int TRUE = 1;
+
+    public final static int MAX_NODES = 1 << 24;
+    private final static int INITIAL_CAPACITY = 1 << 10;
+    private final static int MAX_CACHE_SIZE = 1 << 22;
+
+    private final int variableCount;
+    private final int maxNodes;
+    private final int[] levelBits;
+    private final int[] bitLevels;
+
+    private int[] levels;
+    private int[] lows;
+    private int[] highs;
+    private int nodeCount;
+
+    private int[] uniqueTable;
+    private int[] cache;
+
+    /**
+     * @param variableCount The amount of variables.
+     * @param variableOrder The bits of the variables in the order they are tested in, starting at the root.
+     */
+    public BinaryDecisionDiagram(int variableCount, int[] variableOrder) {
+        this(variableCount, variableOrder, MAX_NODES);
+    }
+
+    /**
+     * @param variableCount The amount of variables.
+     * @param variableOrder The bits of the variables in the order they are tested in, starting at the root.
+     * @param maxNodes      The amount of nodes after which building the diagram fails, at most {@link #MAX_NODES}.
+     */
+    public BinaryDecisionDiagram(int variableCount, int[] variableOrder, int maxNodes) {
+        if (variableOrder.length != variableCount)
+            throw new IllegalArgumentException("The variable order has to contain all " + variableCount + " variables");
+        this.variableCount = variableCount;
+        this.maxNodes = Math.min(maxNodes, MAX_NODES);
+        this.levelBits = variableOrder.clone();
+        this.bitLevels = new int[variableCount];
+        Arrays.fill(bitLevels, -1);
+        for (int level = 0; level < variableCount; level++) {
+            int bit = variableOrder[level];
+            if (bit < 0 || bit >= variableCount || bitLevels[bit] != -1)
+                throw new IllegalArgumentException("Invalid variable order: " + Arrays.toString(variableOrder));
+            bitLevels[bit] = level;
+        }
+
+        levels = new int[INITIAL_CAPACITY];
+        lows = new int[INITIAL_CAPACITY];
+        highs = new int[INITIAL_CAPACITY];
+        uniqueTable = new int[INITIAL_CAPACITY * 2];
+        cache = newCache(INITIAL_CAPACITY * 2);
+
+        // the terminals are placed below the last variable
+        for (int terminal = FALSE; terminal <= TRUE; terminal++) {
+            levels[terminal] = variableCount;
+            lows[terminal] = terminal;
+            highs[terminal] = terminal;
+        }
+        nodeCount = 2;
+    }
+
+    /**
+     * Creates a diagram for the variables of the expression using the order returned by
+     * {@link #getVariableOrder(BooleanExpression, int)}.
+     */
+    public static BinaryDecisionDiagram forExpression(BooleanExpression expression, int variableCount) {
+        return forExpression(expression, variableCount, MAX_NODES);
+    }
+
+    public static BinaryDecisionDiagram forExpression(BooleanExpression expression, int variableCount, int maxNodes) {
+        return new BinaryDecisionDiagram(variableCount, getVariableOrder(expression, variableCount), maxNodes);
+    }
+
+    /**
+     * Orders the variables by their first occurrence in a depth-first traversal of the expression. Variables that are
+     * used in the same sub-expression are placed next to each other that way, which usually keeps the diagram small,
+     * while an alphabetical order might separate them: <code>(a1 AND b1) OR (a2 AND b2) OR ...</code> needs a linear
+     * amount of nodes in the order <code>a1, b1, a2, b2, ...</code>, but an exponential amount in the order
+     * <code>a1, a2, ..., b1, b2, ...</code>.<br>
+     * Variables that do not appear in the expression are appended at the end.
+     *
+     * @param expression    The expression the diagram will be built for.
+     * @param variableCount The amount of variables.
+     * @return The bits of the variables in the order they should be tested in.
+     */
+    public static int[] getVariableOrder(BooleanExpression expression, int variableCount) {
+        int[] order = new int[variableCount];
+        boolean[] ordered = new boolean[variableCount];
+        int size = 0;
+
+        List<BooleanExpression> stack = new ArrayList<>();
+        stack.add(expression);
+        while (!stack.isEmpty()) {
+            BooleanExpression current = stack.remove(stack.size() - 1);
+            if (current instanceof BooleanExpression.Var) {
+                int bit = ((BooleanExpression.Var) current).getBit();
+                if (bit >= variableCount)
+                    throw new IllegalArgumentException("Variable " + current + " is not part of the " + variableCount + " variables");
+                if (!ordered[bit]) {
+                    ordered[bit] = true;
+                    order[size++] = bit;
+                }
+            } else if (current instanceof BooleanExpression.Not) {
+                stack.add(((BooleanExpression.Not) current).getOperand());
+            } else if (current instanceof BooleanExpression.Binary) {
+                stack.add(((BooleanExpression.Binary) current).getRight());
+                stack.add(((BooleanExpression.Binary) current).getLeft());
+            }
+        }
+
+        for (int bit = variableCount - 1; bit >= 0; bit--)
+            if (!ordered[bit]) order[size++] = bit;
+        return order;
+    }
+
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    /**
+     * @return The bits of the variables in the order they are tested in.
+     */
+    public int[] getVariableOrder() {
+        return levelBits.clone();
+    }
+
+    /**
+     * @return The amount of nodes that have been created in this diagram, including the terminals.
+     */
+    public int getCreatedNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Builds the node of the given compiled expression.
+     *
+     * @param expression The expression to build.
+     * @return The id of the node representing the expression.
+     */
+    public int build(BooleanExpression expression) {
+        if (expression instanceof BooleanExpression.Var) {
+            int bit = ((BooleanExpression.Var) expression).getBit();
+            if (bit >= variableCount)
+                throw new IllegalArgumentException("Variable " + expression + " is not part of the " + variableCount + " variables");
+            return variable(bit);
+        } else if (expression instanceof BooleanExpression.Const) {
+            return ((BooleanExpression.Const) expression).getValue() ? TRUE : FALSE;
+        } else if (expression instanceof BooleanExpression.Not) {
+            return not(build(((BooleanExpression.Not) expression).getOperand()));
+        }
+
+        BooleanExpression.Binary binary = (BooleanExpression.Binary) expression;
+        int left = build(binary.getLeft());
+        int right = build(binary.getRight());
+        if (binary instanceof BooleanExpression.And) return and(left, right);
+        else if (binary instanceof BooleanExpression.Or) return or(left, right);
+        else if (binary instanceof BooleanExpression.Nand) return not(and(left, right));
+        else if (binary instanceof BooleanExpression.Nor) return not(or(left, right));
+        else if (binary instanceof BooleanExpression.Xor) return xor(left, right);
+        else if (binary instanceof BooleanExpression.Impl) return ite(left, right, TRUE);
+        else if (binary instanceof BooleanExpression.Equi) return not(xor(left, right));
+        throw new IllegalArgumentException("Unknown expression node: " + expression.getClass().getSimpleName());
+    }
+
+    public int variable(int bit) {
+        return makeNode(bitLevels[bit], FALSE, TRUE);
+    }
+
+    public int not(int node) {
+        return ite(node, FALSE, TRUE);
+    }
+
+    public int and(int node1, int node2) {
+        return ite(node1, node2, FALSE);
+    }
+
+    public int or(int node1, int node2) {
+        return ite(node1, TRUE, node2);
+    }
+
+    public int xor(int node1, int node2) {
+        return ite(node1, not(node2), node2);
+    }
+
+    /**
+     * Calculates <code>(f AND g) OR (!f AND h)</code>. All other operations are built on top of this one.
+     *
+     * @param f The condition.
+     * @param g The node used where the condition is true.
+     * @param h The node used where the condition is false.
+     * @return The resulting node.
+     */
+    public int ite(int f, int g, int h) {
+        if (f == TRUE) return g;
+        if (f == FALSE) return h;
+        if (g == h) return g;
+        if (g == TRUE && h == FALSE) return f;
+
+        int slot = hash(f, g, h) & (cache.length / 4 - 1);
+        int entry = slot * 4;
+        if (cache[entry] == f && cache[entry + 1] == g && cache[entry + 2] == h) return cache[entry + 3];
+
+        int level = Math.min(levels[f], Math.min(levels[g], levels[h]));
+        int low = ite(cofactor(f, level, false), cofactor(g, level, false), cofactor(h, level, false));
+        int high = ite(cofactor(f, level, true), cofactor(g, level, true), cofactor(h, level, true));
+        int result = makeNode(level, low, high);
+
+        // the cache might have been replaced while creating the node
+        entry = (hash(f, g, h) & (cache.length / 4 - 1)) * 4;
+        cache[entry] = f;
+        cache[entry + 1] = g;
+        cache[entry + 2] = h;
+        cache[entry + 3] = result;
+        return result;
+    }
+
+    private int cofactor(int node, int level, boolean value) {
+        if (levels[node] != level) return node;
+        return value ? highs[node] : lows[node];
+    }
+
+    /**
+     * Returns the node with the given variable and children, a new node is only created if there is none yet.
+     */
+    private int makeNode(int level, int low, int high) {
+        if (low == high) return low;
+
+        int mask = uniqueTable.length - 1;
+        int slot = hash(level, low, high) & mask;
+        while (uniqueTable[slot] != 0) {
+            int node = uniqueTable[slot];
+            if (levels[node] == level && lows[node] == low && highs[node] == high) return node;
+            slot = (slot + 1) & mask;
+        }
+
+        if (nodeCount == levels.length) {
+            grow();
+            return makeNode(level, low, high);
+        }
+
+        int node = nodeCount++;
+        levels[node] = level;
+        lows[node] = low;
+        highs[node] = high;
+        uniqueTable[slot] = node;
+        return node;
+    }
+
+    private void grow() {
+        if (levels.length >= maxNodes)
+            throw new IllegalArgumentException("The decision diagram exceeds the maximum of " + maxNodes + " nodes");
+        int capacity = (int) Math.min((long) levels.length * 2, maxNodes);
+        levels = Arrays.copyOf(levels, capacity);
+        lows = Arrays.copyOf(lows, capacity);
+        highs = Arrays.copyOf(highs, capacity);
+
+        // the terminals are never stored in the unique table, so 0 marks an empty slot
+        uniqueTable = new int[capacity * 2];
+        int mask = uniqueTable.length - 1;
+        for (int node = 2; node < nodeCount; node++) {
+            int slot = hash(levels[node], lows[node], highs[node]) & mask;
+            while (uniqueTable[slot] != 0) slot = (slot + 1) & mask;
+            uniqueTable[slot] = node;
+        }
+
+        if (cache.length / 4 < MAX_CACHE_SIZE) cache = newCache(capacity * 2);
+    }
+
+    private static int[] newCache(int size) {
+        int[] cache = new int[size * 4];
+        Arrays.fill(cache, -1);
+        return cache;
+    }
+
+    private static int hash(int a, int b, int c) {
+        int hash = a * 0x9E3779B1 + b;
+        hash = hash * 0x85EBCA77 + c;
+        hash *= 0xC2B2AE3D;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @param root The root of the function.
+     * @return The amount of nodes reachable from the root, including the terminals.
+     */
+    public int getNodeCount(int root) {
+        boolean[] visited = new boolean[nodeCount];
+        int[] stack = new int[nodeCount];
+        int stackSize = 0;
+        int count = 0;
+        stack[stackSize++] = root;
+        visited[root] = true;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            count++;
+            if (node <= TRUE) continue;
+            if (!visited[lows[node]]) {
+                visited[lows[node]] = true;
+                stack[stackSize++] = lows[node];
+            }
+            if (!visited[highs[node]]) {
+                visited[highs[node]] = true;
+                stack[stackSize++] = highs[node];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the assignments of all variables of the diagram that make the function true. Every node is only visited
+     * once, so this takes linear time in the size of the diagram instead of enumerating all rows.
+     *
+     * @param root The root of the function.
+     * @return The amount of satisfying assignments.
+     */
+    public BigInteger getModelCount(int root) {
+        BigInteger[] counts = new BigInteger[nodeCount];
+        counts[FALSE] = BigInteger.ZERO;
+        counts[TRUE] = BigInteger.ONE;
+        return countModels(root, counts).shiftLeft(levels[root]);
+    }
+
+    /**
+     * @return The amount of satisfying assignments of the variables from the level of the node downwards.
+     */
+    private BigInteger countModels(int node, BigInteger[] counts) {
+        if (counts[node] != null) return counts[node];
+        int low = lows[node], high = highs[node];
+        BigInteger count = countModels(low, counts).shiftLeft(levels[low] - levels[node] - 1)
+                .add(countModels(high, counts).shiftLeft(levels[high] - levels[node] - 1));
+        counts[node] = count;
+        return count;
+    }
+
+    /**
+     * @param root The root of the function.
+     * @return An assignment that makes the function true, indexed by the bits of the variables. Variables that do not
+     * matter are set to false. <code>null</code> if the function is not satisfiable.
+     */
+    public boolean[] getSatisfyingAssignment(int root) {
+        if (root == FALSE) return null;
+        boolean[] assignment = new boolean[variableCount];
+        int node = root;
+        while (node != TRUE) {
+            if (lows[node] != FALSE) {
+                node = lows[node];
+            } else {
+                assignment[levelBits[levels[node]]] = true;
+                node = highs[node];
+            }
+        }
+        return assignment;
+    }
+
+    /**
+     * @param root       The root of the function.
+     * @param assignment The values of the variables, indexed by their bits.
+     * @return The value of the function for the assignment.
+     */
+    public boolean evaluate(int root, boolean[] assignment) {
+        int node = root;
+        while (node > TRUE)
+            node = assignment[levelBits[levels[node]]] ? highs[node] : lows[node];
+        return node == TRUE;
+    }
+}
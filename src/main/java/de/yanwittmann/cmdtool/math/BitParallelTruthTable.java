@@ -0,0 +1,152 @@
+package de.yanwittmann.cmdtool.math;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.LongStream;
+
+/**
+ * Evaluates a {@link BooleanExpression} for all rows of a truth table, 64 rows at a time.<br>
+ * Every variable is represented as a column of bits, where bit <code>i</code> of word <code>w</code> is the value
+ * of the variable in row <code>w * 64 + i</code>. Since the rows are enumerated in binary order, these columns are
+ * the standard alternating patterns and can be generated for any word without storing them.
+ */
+public class BitParallelTruthTable {
+
+    public final static int MAX_VARIABLES = 62;
+    private final static int COUNT_CHUNK_WORDS = 1 << 12;
+
+    private final static long[] VARIABLE_PATTERNS = {
+            0xAAAAAAAAAAAAAAAAL,
+            0xCCCCCCCCCCCCCCCCL,
+            0xF0F0F0F0F0F0F0F0L,
+            0xFF00FF00FF00FF00L,
+            0xFFFF0000FFFF0000L,
+            0xFFFFFFFF00000000L
+    };
+
+    private final BooleanExpression expression;
+    private final int variableCount;
+
+    public BitParallelTruthTable(BooleanExpression expression, int variableCount) {
+        checkVariableCount(variableCount);
+        this.expression = expression;
+        this.variableCount = variableCount;
+    }
+
+    /**
+     * @throws IllegalArgumentException If a truth table cannot have that many variables.
+     */
+    static void checkVariableCount(int variableCount) {
+        if (variableCount > MAX_VARIABLES)
+            throw new IllegalArgumentException("Too many variables for a truth table: " + variableCount + " (max " + MAX_VARIABLES + ")");
+    }
+
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    public long getRowCount() {
+        return 1L << variableCount;
+    }
+
+    public long getWordCount() {
+        return getWordCount(variableCount);
+    }
+
+    /**
+     * Evaluates the 64 rows of the given word. The words array is used to store the variable columns and can be
+     * reused for the next call, it must have room for at least 64 entries.
+     *
+     * @param wordIndex The index of the word to evaluate.
+     * @param words     The buffer for the variable columns.
+     * @return The results of the rows, bits outside of the table are cleared.
+     */
+    public long evaluateWord(long wordIndex, long[] words) {
+        fillVariableWords(wordIndex, variableCount, words);
+        return expression.evaluate(words) & getWordMask(variableCount);
+    }
+
+    /**
+     * Counts the rows the expression is true in, without storing the results. The words are split into chunks that
+     * are counted in parallel.
+     *
+     * @param threads The amount of threads to use.
+     * @return The amount of rows that evaluate to true.
+     */
+    public long countTrueRows(int threads) {
+        long wordCount = getWordCount();
+        long chunkCount = (wordCount + COUNT_CHUNK_WORDS - 1) / COUNT_CHUNK_WORDS;
+        LongUnaryOperator countChunk = chunk -> {
+            long[] words = new long[Long.SIZE];
+            long count = 0;
+            for (long w = chunk * COUNT_CHUNK_WORDS; w < Math.min(wordCount, (chunk + 1) * COUNT_CHUNK_WORDS); w++)
+                count += Long.bitCount(evaluateWord(w, words));
+            return count;
+        };
+        if (threads <= 1 || chunkCount == 1) return LongStream.range(0, chunkCount).map(countChunk).sum();
+
+        // a parallel stream uses the pool of the task it is started from
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(() -> LongStream.range(0, chunkCount).parallel().map(countChunk).sum()).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Evaluates the whole table.
+     *
+     * @return The results as bit set, row <code>r</code> is stored in bit <code>r % 64</code> of word <code>r / 64</code>.
+     */
+    public long[] evaluate() {
+        long wordCount = getWordCount();
+        if (wordCount > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Too many variables to store the results of the truth table: " + variableCount);
+        long[] results = new long[(int) wordCount];
+        long[] words = new long[Long.SIZE];
+        for (int w = 0; w < results.length; w++) results[w] = evaluateWord(w, words);
+        return results;
+    }
+
+    /**
+     * Fills the columns of the input variables for the given word. The first variable of the table is stored at the
+     * highest index (<code>variableCount - 1</code>), the last one at index 0.
+     *
+     * @param wordIndex     The index of the word to generate the columns for.
+     * @param variableCount The amount of variables in the table.
+     * @param words         The buffer to fill.
+     */
+    public static void fillVariableWords(long wordIndex, int variableCount, long[] words) {
+        for (int bit = 0; bit < variableCount; bit++) {
+            if (bit < VARIABLE_PATTERNS.length) words[bit] = VARIABLE_PATTERNS[bit];
+            else words[bit] = ((wordIndex >>> (bit - VARIABLE_PATTERNS.length)) & 1L) != 0 ? -1L : 0L;
+        }
+    }
+
+    /**
+     * @param bit A bit below 6.
+     * @return The column of the variable with the given bit, which is the same for every word.
+     */
+    public static long getVariablePattern(int bit) {
+        return VARIABLE_PATTERNS[bit];
+    }
+
+    public static long getWordCount(int variableCount) {
+        return ((1L << variableCount) + Long.SIZE - 1) >>> 6;
+    }
+
+    /**
+     * Tables with less than 6 variables do not fill a whole word.
+     *
+     * @param variableCount The amount of variables in the table.
+     * @return The mask of the bits that belong to the table in every word.
+     */
+    public static long getWordMask(int variableCount) {
+        return variableCount >= 6 ? -1L : (1L << (1 << variableCount)) - 1;
+    }
+
+    public static boolean getBit(long word, int index) {
+        return ((word >>> index) & 1L) != 0;
+    }
+}
@@ -0,0 +1,366 @@
+package de.yanwittmann.cmdtool.math;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Function;
+
+/**
+ * A boolean expression that has been compiled into a tree of nodes, so that it can be evaluated any number of times
+ * without parsing the expression string again.<br>
+ * Variables do not store a value themselves, they refer to a bit in the <code>assignment</code> that is passed to
+ * {@link #evaluate(long)}, or to the word at the index of that bit when evaluating 64 assignments at once using
+ * {@link #evaluate(long[])}. Use the {@link BooleanExpressionCompiler} to create an expression tree.
+ */
+public abstract class BooleanExpression {
+
+    public abstract boolean evaluate(long assignment);
+
+    /**
+     * Evaluates the expression for 64 assignments at once. Every bit of a word represents the value of the variable
+     * in one of the assignments, the bits of the returned word are the results for these assignments.
+     *
+     * @param words The words of the variables, indexed by the bit of the variable.
+     * @return The results of the 64 evaluations.
+     */
+    public abstract long evaluate(long[] words);
+
+    /**
+     * Builds the text of the expression like {@link #toString()}, but with the given symbols for the operators.
+     *
+     * @param symbols The symbol for every kind of operator, including {@link OperatorKind#NOT}.
+     * @return The text of the expression.
+     */
+    public String toString(Function<OperatorKind, String> symbols) {
+        return toText(this, symbols);
+    }
+
+    /**
+     * Builds the text of an expression using a stack instead of recursion, so that deep trees like long chains of the
+     * same operator can be written without overflowing the call stack.
+     */
+    private static String toText(BooleanExpression expression, Function<OperatorKind, String> symbols) {
+        StringBuilder text = new StringBuilder();
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(expression);
+        while (!stack.isEmpty()) {
+            Object next = stack.pop();
+            if (next instanceof Not) {
+                text.append(symbols == null ? "!" : symbols.apply(OperatorKind.NOT));
+                stack.push(((Not) next).operand);
+            } else if (next instanceof Binary) {
+                Binary binary = (Binary) next;
+                text.append('(');
+                stack.push(")");
+                stack.push(binary.right);
+                stack.push(" " + (symbols == null ? binary.getSymbol() : symbols.apply(binary.getKind())) + " ");
+                stack.push(binary.left);
+            } else {
+                text.append(next);
+            }
+        }
+        return text.toString();
+    }
+
+    public static class Not extends BooleanExpression {
+        private final BooleanExpression operand;
+
+        public Not(BooleanExpression operand) {
+            this.operand = operand;
+        }
+
+        public BooleanExpression getOperand() {
+            return operand;
+        }
+
+        @Override
+        public boolean evaluate(long assignment) {
+            return !operand.evaluate(assignment);
+        }
+
+        @Override
+        public long evaluate(long[] words) {
+            return ~operand.evaluate(words);
+        }
+
+        @Override
+        public String toString() {
+            return toText(this, null);
+        }
+    }
+
+    public abstract static class Binary extends BooleanExpression {
+        protected final BooleanExpression left;
+        protected final BooleanExpression right;
+
+        public Binary(BooleanExpression left, BooleanExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        public BooleanExpression getLeft() {
+            return left;
+        }
+
+        public BooleanExpression getRight() {
+            return right;
+        }
+
+        protected abstract String getSymbol();
+
+        public abstract OperatorKind getKind();
+
+        @Override
+        public String toString() {
+            return toText(this, null);
+        }
+    }
+
+    public static class And extends Binary {
+        public And(BooleanExpression left, BooleanExpression right) {
+            super(left, right);
+        }
+
+        @Override
+        public boolean evaluate(long assignment) {
+            return left.evaluate(assignment) && right.evaluate(assignment);
+        }
+
+        @Override
+        public long evaluate(long[] words) {
+            return left.evaluate(words) & right.evaluate(words);
+        }
+
+        @Override
+        protected String getSymbol() {
+            return "AND";
+        }
+
+        @Override
+        public OperatorKind getKind() {
+            return OperatorKind.AND;
+        }
+    }
+
+    public static class Or extends Binary {
+        public Or(BooleanExpression left, BooleanExpression right) {
+            super(left, right);
+        }
+
+        @Override
+        public boolean evaluate(long assignment) {
+            return left.evaluate(assignment) || right.evaluate(assignment);
+        }
+
+        @Override
+        public long evaluate(long[] words) {
+            return left.evaluate(words) | right.evaluate(words);
+        }
+
+        @Override
+        protected String getSymbol() {
+            return "OR";
+        }
+
+        @Override
+        public OperatorKind getKind() {
+            return OperatorKind.OR;
+        }
+    }
+
+    public static class Nand extends Binary {
+        public Nand(BooleanExpression left, BooleanExpression right) {
+            super(left, right);
+        }
+
+        @Override
+        public boolean evaluate(long assignment) {
+            return !(left.evaluate(assignment) && right.evaluate(assignment));
+        }
+
+        @Override
+        public long evaluate(long[] words) {
+            return ~(left.evaluate(words) & right.evaluate(words));
+        }
+
+        @Override
+        protected String getSymbol() {
+            return "NAND";
+        }
+
+        @Override
+        public OperatorKind getKind() {
+            return OperatorKind.NAND;
+        }
+    }
+
+    public static class Nor extends Binary {
+        public Nor(BooleanExpression left, BooleanExpression right) {
+            super(left, right);
+        }
+
+        @Override
+        public boolean evaluate(long assignment) {
+            return !(left.evaluate(assignment) || right.evaluate(assignment));
+        }
+
+        @Override
+        public long evaluate(long[] words) {
+            return ~(left.evaluate(words) | right.evaluate(words));
+        }
+
+        @Override
+        protected String getSymbol() {
+            return "NOR";
+        }
+
+        @Override
+        public OperatorKind getKind() {
+            return OperatorKind.NOR;
+        }
+    }
+
+    public static class Xor extends Binary {
+        public Xor(BooleanExpression left, BooleanExpression right) {
+            super(left, right);
+        }
+
+        @Override
+        public boolean evaluate(long assignment) {
+            return left.evaluate(assignment) != right.evaluate(assignment);
+        }
+
+        @Override
+        public long evaluate(long[] words) {
+            return left.evaluate(words) ^ right.evaluate(words);
+        }
+
+        @Override
+        protected String getSymbol() {
+            return "XOR";
+        }
+
+        @Override
+        public OperatorKind getKind() {
+            return OperatorKind.XOR;
+        }
+    }
+
+    public static class Impl extends Binary {
+        public Impl(BooleanExpression left, BooleanExpression right) {
+            super(left, right);
+        }
+
+        @Override
+        public boolean evaluate(long assignment) {
+            return !left.evaluate(assignment) || right.evaluate(assignment);
+        }
+
+        @Override
+        public long evaluate(long[] words) {
+            return ~left.evaluate(words) | right.evaluate(words);
+        }
+
+        @Override
+        protected String getSymbol() {
+            return "=>";
+        }
+
+        @Override
+        public OperatorKind getKind() {
+            return OperatorKind.IMPL;
+        }
+    }
+
+    public static class Equi extends Binary {
+        public Equi(BooleanExpression left, BooleanExpression right) {
+            super(left, right);
+        }
+
+        @Override
+        public boolean evaluate(long assignment) {
+            return left.evaluate(assignment) == right.evaluate(assignment);
+        }
+
+        @Override
+        public long evaluate(long[] words) {
+            return ~(left.evaluate(words) ^ right.evaluate(words));
+        }
+
+        @Override
+        protected String getSymbol() {
+            return "<=>";
+        }
+
+        @Override
+        public OperatorKind getKind() {
+            return OperatorKind.EQUI;
+        }
+    }
+
+    public static class Var extends BooleanExpression {
+        private final String name;
+        private final int bit;
+
+        public Var(String name, int bit) {
+            this.name = name;
+            this.bit = bit;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getBit() {
+            return bit;
+        }
+
+        @Override
+        public boolean evaluate(long assignment) {
+            return ((assignment >>> bit) & 1L) != 0;
+        }
+
+        @Override
+        public long evaluate(long[] words) {
+            return words[bit];
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public static class Const extends BooleanExpression {
+        public final static Const TRUE = new Const(true);
+        public final static Const FALSE = new Const(false);
+
+        private final boolean value;
+
+        private Const(boolean value) {
+            this.value = value;
+        }
+
+        public static Const of(boolean value) {
+            return value ? TRUE : FALSE;
+        }
+
+        public boolean getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean evaluate(long assignment) {
+            return value;
+        }
+
+        @Override
+        public long evaluate(long[] words) {
+            return value ? -1L : 0L;
+        }
+
+        @Override
+        public String toString() {
+            return value ? "1" : "0";
+        }
+    }
+}
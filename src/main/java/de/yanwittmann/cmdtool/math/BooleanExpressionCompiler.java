@@ -0,0 +1,151 @@
+package de.yanwittmann.cmdtool.math;
+
+import com.fathzer.soft.javaluator.AbstractEvaluator;
+import com.fathzer.soft.javaluator.Operator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses an expression using the same operators as the {@link TreeBooleanEvaluator}, but instead of evaluating it
+ * directly, a {@link BooleanExpression} tree is built that can be evaluated for every row of a truth table.<br>
+ * Every variable has to be mapped to the bit it will be read from in the assignment. Only bits below 64 can be used
+ * to evaluate the expression, higher indices are allowed for expressions that are passed to the {@link SatSolver}.<br>
+ * The operators are left associative, so a chain like <code>A AND B AND C</code> would become a tree as deep as the
+ * chain is long, which overflows the stack of every recursive walk of the tree for long chains. Chains of the
+ * associative operators <code>AND</code>, <code>OR</code>, <code>XOR</code> and <code>EQUI</code> with more than
+ * {@link #MAX_UNBALANCED_CHAIN} operands are therefore built as balanced trees, shorter chains keep the order they
+ * were written in.
+ */
+public class BooleanExpressionCompiler extends AbstractEvaluator<BooleanExpression> {
+
+    public final static int MAX_UNBALANCED_CHAIN = 64;
+
+    private final Map<String, Integer> variableBits;
+
+    public BooleanExpressionCompiler(Map<String, Integer> variableBits) {
+        super(TreeBooleanEvaluator.getPARAMETERS());
+        for (Map.Entry<String, Integer> variable : variableBits.entrySet())
+            if (variable.getValue() < 0)
+                throw new IllegalArgumentException("Variable " + variable.getKey() + " cannot be assigned to bit " + variable.getValue());
+        this.variableBits = variableBits;
+    }
+
+    public BooleanExpression compile(String expression) {
+        return close(evaluate(expression));
+    }
+
+    @Override
+    protected BooleanExpression toValue(String literal, Object evaluationContext) {
+        Integer bit = variableBits.get(literal);
+        if (bit != null) return new BooleanExpression.Var(literal, bit);
+        return BooleanExpression.Const.of(TreeBooleanEvaluator.getValue(literal));
+    }
+
+    @Override
+    protected Iterator<String> tokenize(String expression) {
+        return TreeBooleanEvaluator.getLexer().tokenize(expression).getTokens().iterator();
+    }
+
+    @Override
+    protected BooleanExpression evaluate(Operator operator, Iterator<BooleanExpression> operands, Object evaluationContext) {
+        OperatorKind kind = TreeBooleanEvaluator.getOperatorKind(operator);
+        BooleanExpression o1 = operands.next();
+        if (kind == OperatorKind.NOT) return new BooleanExpression.Not(close(o1));
+        BooleanExpression o2 = close(operands.next());
+        if (kind == OperatorKind.AND || kind == OperatorKind.OR || kind == OperatorKind.XOR || kind == OperatorKind.EQUI) {
+            // the chain is continued by every operator of the same kind that follows, the left operand is the chain
+            Chain chain = o1 instanceof Chain && ((Chain) o1).kind == kind ? (Chain) o1 : new Chain(kind, close(o1));
+            chain.operands.add(o2);
+            return chain;
+        }
+        return create(kind, close(o1), o2);
+    }
+
+    /**
+     * Turns a completed chain into a tree, other expressions are returned as they are.
+     */
+    private static BooleanExpression close(BooleanExpression expression) {
+        if (!(expression instanceof Chain)) return expression;
+        Chain chain = (Chain) expression;
+        List<BooleanExpression> level = chain.operands;
+        if (level.size() <= MAX_UNBALANCED_CHAIN) {
+            BooleanExpression tree = level.get(0);
+            for (int i = 1; i < level.size(); i++) tree = create(chain.kind, tree, level.get(i));
+            return tree;
+        }
+        while (level.size() > 1) {
+            List<BooleanExpression> next = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i + 1 < level.size(); i += 2) next.add(create(chain.kind, level.get(i), level.get(i + 1)));
+            if (level.size() % 2 != 0) next.add(level.get(level.size() - 1));
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    private static BooleanExpression create(OperatorKind kind, BooleanExpression o1, BooleanExpression o2) {
+        switch (kind) {
+            case OR:
+                return new BooleanExpression.Or(o1, o2);
+            case AND:
+                return new BooleanExpression.And(o1, o2);
+            case IMPL:
+                return new BooleanExpression.Impl(o1, o2);
+            case EQUI:
+                return new BooleanExpression.Equi(o1, o2);
+            case NAND:
+                return new BooleanExpression.Nand(o1, o2);
+            case NOR:
+                return new BooleanExpression.Nor(o1, o2);
+            case XOR:
+                return new BooleanExpression.Xor(o1, o2);
+        }
+        throw new IllegalArgumentException("Invalid operator: " + kind);
+    }
+
+    /**
+     * The operands of a chain of the same associative operator while the expression is parsed. It is never part of a
+     * compiled expression, every chain is turned into a tree once an operator of another kind is applied to it.
+     */
+    private static class Chain extends BooleanExpression {
+        private final OperatorKind kind;
+        private final List<BooleanExpression> operands = new ArrayList<>();
+
+        private Chain(OperatorKind kind, BooleanExpression first) {
+            this.kind = kind;
+            this.operands.add(first);
+        }
+
+        @Override
+        public boolean evaluate(long assignment) {
+            throw new IllegalStateException("The chain has not been completed");
+        }
+
+        @Override
+        public long evaluate(long[] words) {
+            throw new IllegalStateException("The chain has not been completed");
+        }
+    }
+
+    /**
+     * Compiles the expression for a truth table with the given variables. The first variable is assigned to the
+     * highest bit, so that the index of a truth table row can directly be used as assignment.
+     *
+     * @param expression The expression to compile.
+     * @param variables  The variables in the order of the truth table columns.
+     * @return The compiled expression.
+     */
+    public static BooleanExpression compile(String expression, List<String> variables) {
+        return new BooleanExpressionCompiler(getVariableBits(variables)).compile(expression);
+    }
+
+    public static Map<String, Integer> getVariableBits(List<String> variables) {
+        Map<String, Integer> variableBits = new HashMap<>();
+        for (int i = 0; i < variables.size(); i++)
+            variableBits.put(variables.get(i), variables.size() - 1 - i);
+        return variableBits;
+    }
+}
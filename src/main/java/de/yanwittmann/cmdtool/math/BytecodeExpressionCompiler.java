@@ -0,0 +1,360 @@
+package de.yanwittmann.cmdtool.math;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiles a {@link BooleanExpression} tree into a generated class, so that evaluating it does not walk the tree and
+ * call a method for every node anymore.<br>
+ * The generated class extends {@link BooleanExpression} and implements both <code>evaluate</code> methods as a
+ * straight sequence of bitwise operations on longs, without any branches:
+ * <ul>
+ *     <li><code>evaluate(long[])</code> loads the words of the variables and combines them like the tree does.</li>
+ *     <li><code>evaluate(long)</code> shifts the bit of every variable to the lowest bit and only uses that bit of
+ *     the result.</li>
+ * </ul>
+ * Since there are no branches, the class files do not need stack map frames. Every class is defined by its own class
+ * loader, so that it can be unloaded again once it has been removed from the cache. The classes are cached by the
+ * text of the expression together with the bits of its variables.<br>
+ * Expressions whose methods would be larger than {@link #MAX_CODE_LENGTH} bytes are not compiled, since the JVM does
+ * not compile such large methods to machine code and interpreting them is slower than walking the tree.
+ */
+public abstract class BytecodeExpressionCompiler {
+
+    public final static int MAX_CODE_LENGTH = 8000;
+    public final static int MAX_CACHED_CLASSES = 256;
+
+    private final static String SUPER_CLASS = BooleanExpression.class.getName().replace('.', '/');
+    private final static String CLASS_PREFIX = BooleanExpression.class.getPackage().getName().replace('.', '/') + "/GeneratedExpression";
+    private final static AtomicLong CLASS_COUNTER = new AtomicLong();
+
+    private final static Map<String, BooleanExpression> CACHE = new LinkedHashMap<String, BooleanExpression>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BooleanExpression> eldest) {
+            return size() > MAX_CACHED_CLASSES;
+        }
+    };
+
+    // constant pool indices, see writeClass
+    private final static int POOL_THIS_CLASS = 2;
+    private final static int POOL_SUPER_CLASS = 4;
+    private final static int POOL_INIT_NAME = 5;
+    private final static int POOL_VOID_DESCRIPTOR = 6;
+    private final static int POOL_SUPER_INIT = 8;
+    private final static int POOL_EVALUATE_NAME = 9;
+    private final static int POOL_EVALUATE_ASSIGNMENT_DESCRIPTOR = 10;
+    private final static int POOL_EVALUATE_WORDS_DESCRIPTOR = 11;
+    private final static int POOL_CODE = 12;
+    private final static int POOL_ALL_BITS = 13;
+    private final static int POOL_TO_STRING_NAME = 15;
+    private final static int POOL_TO_STRING_DESCRIPTOR = 16;
+    private final static int POOL_TEXT = 18;
+    private final static int POOL_SIZE = 19;
+
+    /**
+     * @param expression The expression to compile, the returned instance may be shared with other callers.
+     * @return An instance of the generated class, or the expression itself if it is too large to be compiled.
+     */
+    public static BooleanExpression compile(BooleanExpression expression) {
+        String key = getKey(expression);
+        if (key == null) return expression;
+        synchronized (CACHE) {
+            BooleanExpression cached = CACHE.get(key);
+            if (cached != null) return cached;
+        }
+
+        BooleanExpression compiled = generate(expression);
+        synchronized (CACHE) {
+            CACHE.putIfAbsent(key, compiled);
+            return CACHE.get(key);
+        }
+    }
+
+    /**
+     * Builds the key using a stack instead of recursion. Every node writes at least one instruction, so expressions
+     * with more than {@link #MAX_CODE_LENGTH} nodes are never compiled and their key is not built any further.
+     *
+     * @return A text that contains the structure of the expression and the names and bits of the variables, or
+     * <code>null</code> if the expression has too many nodes to be compiled.
+     */
+    private static String getKey(BooleanExpression expression) {
+        StringBuilder key = new StringBuilder();
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(expression);
+        int nodes = 0;
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (!(next instanceof BooleanExpression)) {
+                key.append(next);
+                continue;
+            }
+            if (++nodes > MAX_CODE_LENGTH) return null;
+            if (next instanceof BooleanExpression.Var) {
+                BooleanExpression.Var variable = (BooleanExpression.Var) next;
+                key.append(variable.getName()).append('#').append(variable.getBit());
+            } else if (next instanceof BooleanExpression.Const) {
+                key.append(next);
+            } else if (next instanceof BooleanExpression.Not) {
+                key.append('!');
+                pending.push(((BooleanExpression.Not) next).getOperand());
+            } else if (next instanceof BooleanExpression.Binary) {
+                BooleanExpression.Binary binary = (BooleanExpression.Binary) next;
+                key.append('(');
+                pending.push(")");
+                pending.push(binary.getRight());
+                pending.push(" " + binary.getSymbol() + " ");
+                pending.push(binary.getLeft());
+            } else {
+                throw new IllegalArgumentException("Cannot compile expression of type " + next.getClass().getName());
+            }
+        }
+        return key.toString();
+    }
+
+    private static BooleanExpression generate(BooleanExpression expression) {
+        Code evaluateAssignment = new Code();
+        Code evaluateWords = new Code();
+        if (!writeCode(expression, evaluateAssignment, false) || !writeCode(expression, evaluateWords, true))
+            return expression;
+        // the lowest bit is the result of the expression
+        evaluateAssignment.write(L2I, -1).write(ICONST_1, 1).write(IAND, -1).write(IRETURN, -1);
+        evaluateWords.write(LRETURN, -2);
+
+        String className = CLASS_PREFIX + CLASS_COUNTER.incrementAndGet();
+        byte[] classFile;
+        try {
+            classFile = writeClass(className, expression.toString(), evaluateAssignment, evaluateWords);
+        } catch (UTFDataFormatException e) {
+            return expression;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        try {
+            Class<?> generatedClass = new GeneratedClassLoader().define(className.replace('/', '.'), classFile);
+            return (BooleanExpression) generatedClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("Failed to load the compiled expression " + expression, e);
+        }
+    }
+
+    /**
+     * Writes the code of one of the <code>evaluate</code> methods, walking the tree using a stack instead of
+     * recursion. The operands of a node are written first, followed by the operator of the node.
+     * <ul>
+     *     <li>For <code>evaluate(long)</code>, the code leaves a long on the stack whose lowest bit is the result of
+     *     the expression for the assignment in the local variable 1.</li>
+     *     <li>For <code>evaluate(long[])</code>, the code leaves the result of the expression for the words in the
+     *     local variable 1 on the stack.</li>
+     * </ul>
+     *
+     * @param words If the code of <code>evaluate(long[])</code> should be written.
+     * @return If the code is small enough.
+     */
+    private static boolean writeCode(BooleanExpression expression, Code code, boolean words) {
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            if (code.length() > MAX_CODE_LENGTH) return false;
+            Object next = pending.pop();
+            if (next == NEGATE) {
+                if (words) code.write(LDC2_W, 2).writeShort(POOL_ALL_BITS).write(LXOR, -2);
+                else code.write(LCONST_1, 2).write(LXOR, -2);
+            } else if (next instanceof Operator) {
+                writeBinaryOperator(((Operator) next).binary, code);
+            } else if (next instanceof BooleanExpression.Var) {
+                int bit = ((BooleanExpression.Var) next).getBit();
+                if (words) {
+                    if (bit > Short.MAX_VALUE) return false;
+                    code.write(ALOAD_1, 1).writeInt(bit).write(LALOAD, 0);
+                } else {
+                    code.write(LLOAD_1, 2);
+                    if ((bit & 63) != 0) code.writeInt(bit & 63).write(LUSHR, -1);
+                }
+            } else if (next instanceof BooleanExpression.Const) {
+                if (!((BooleanExpression.Const) next).getValue()) code.write(LCONST_0, 2);
+                else if (words) code.write(LDC2_W, 2).writeShort(POOL_ALL_BITS);
+                else code.write(LCONST_1, 2);
+            } else if (next instanceof BooleanExpression.Not) {
+                pending.push(NEGATE);
+                pending.push(((BooleanExpression.Not) next).getOperand());
+            } else {
+                // pushed in reverse, implications negate their left operand before the right one is loaded
+                BooleanExpression.Binary binary = (BooleanExpression.Binary) next;
+                if (isNegated(binary)) pending.push(NEGATE);
+                pending.push(new Operator(binary));
+                pending.push(binary.getRight());
+                if (binary instanceof BooleanExpression.Impl) pending.push(NEGATE);
+                pending.push(binary.getLeft());
+            }
+        }
+        return code.length() <= MAX_CODE_LENGTH;
+    }
+
+    /**
+     * Marks the operator of a binary node on the stack of {@link #writeCode(BooleanExpression, Code, boolean)}, to be
+     * written once both operands are on the operand stack.
+     */
+    private static class Operator {
+        private final BooleanExpression.Binary binary;
+
+        private Operator(BooleanExpression.Binary binary) {
+            this.binary = binary;
+        }
+    }
+
+    private final static Object NEGATE = new Object();
+
+    /**
+     * Combines the two operands on the stack, implications have already negated their left operand and
+     * {@link #isNegated(BooleanExpression.Binary)} operators still have to negate the result.
+     */
+    private static void writeBinaryOperator(BooleanExpression.Binary binary, Code code) {
+        if (binary instanceof BooleanExpression.And || binary instanceof BooleanExpression.Nand) code.write(LAND, -2);
+        else if (binary instanceof BooleanExpression.Or || binary instanceof BooleanExpression.Nor || binary instanceof BooleanExpression.Impl)
+            code.write(LOR, -2);
+        else if (binary instanceof BooleanExpression.Xor || binary instanceof BooleanExpression.Equi) code.write(LXOR, -2);
+        else throw new IllegalArgumentException("Cannot compile operator " + binary.getSymbol());
+    }
+
+    private static boolean isNegated(BooleanExpression.Binary binary) {
+        return binary instanceof BooleanExpression.Nand || binary instanceof BooleanExpression.Nor || binary instanceof BooleanExpression.Equi;
+    }
+
+    private static byte[] writeClass(String className, String text, Code evaluateAssignment, Code evaluateWords) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(49); // Java 5, the last version that does not require stack map frames
+
+        out.writeShort(POOL_SIZE);
+        writeUtf8(out, className);                                            // 1
+        writeReference(out, 7, 1);                                            // 2 this class
+        writeUtf8(out, SUPER_CLASS);                                          // 3
+        writeReference(out, 7, 3);                                            // 4 super class
+        writeUtf8(out, "<init>");                                             // 5
+        writeUtf8(out, "()V");                                                // 6
+        out.writeByte(12);                                                    // 7 name and type of the constructor
+        out.writeShort(POOL_INIT_NAME);
+        out.writeShort(POOL_VOID_DESCRIPTOR);
+        out.writeByte(10);                                                    // 8 super constructor
+        out.writeShort(POOL_SUPER_CLASS);
+        out.writeShort(7);
+        writeUtf8(out, "evaluate");                                           // 9
+        writeUtf8(out, "(J)Z");                                               // 10
+        writeUtf8(out, "([J)J");                                              // 11
+        writeUtf8(out, "Code");                                               // 12
+        out.writeByte(5);                                                     // 13 and 14, all bits set
+        out.writeLong(-1L);
+        writeUtf8(out, "toString");                                           // 15
+        writeUtf8(out, "()Ljava/lang/String;");                               // 16
+        writeUtf8(out, text);                                                 // 17
+        writeReference(out, 8, 17);                                           // 18 the text as string
+
+        out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+        out.writeShort(POOL_THIS_CLASS);
+        out.writeShort(POOL_SUPER_CLASS);
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+
+        out.writeShort(4);
+        Code constructor = new Code().write(ALOAD_0, 1).write(INVOKESPECIAL, -1).writeShort(POOL_SUPER_INIT).write(RETURN, 0);
+        writeMethod(out, POOL_INIT_NAME, POOL_VOID_DESCRIPTOR, constructor, 1);
+        writeMethod(out, POOL_EVALUATE_NAME, POOL_EVALUATE_ASSIGNMENT_DESCRIPTOR, evaluateAssignment, 3);
+        writeMethod(out, POOL_EVALUATE_NAME, POOL_EVALUATE_WORDS_DESCRIPTOR, evaluateWords, 2);
+        Code toString = new Code().write(LDC_W, 1).writeShort(POOL_TEXT).write(ARETURN, -1);
+        writeMethod(out, POOL_TO_STRING_NAME, POOL_TO_STRING_DESCRIPTOR, toString, 1);
+
+        out.writeShort(0); // attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeUtf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static void writeReference(DataOutputStream out, int tag, int index) throws IOException {
+        out.writeByte(tag);
+        out.writeShort(index);
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, Code code, int maxLocals) throws IOException {
+        out.writeShort(0x0001); // public
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(POOL_CODE);
+        out.writeInt(12 + code.length());
+        out.writeShort(code.maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length());
+        code.bytes.writeTo(out);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    private final static int ICONST_0 = 0x03, ICONST_1 = 0x04, LCONST_0 = 0x09, LCONST_1 = 0x0a, BIPUSH = 0x10,
+            SIPUSH = 0x11, LDC_W = 0x13, LDC2_W = 0x14, LLOAD_1 = 0x1f, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, LALOAD = 0x2f,
+            LUSHR = 0x7d, IAND = 0x7e, LAND = 0x7f, LOR = 0x81, LXOR = 0x83, L2I = 0x88, IRETURN = 0xac,
+            LRETURN = 0xad, ARETURN = 0xb0, RETURN = 0xb1, INVOKESPECIAL = 0xb7;
+
+    /**
+     * The code of a method, keeping track of the maximum size of the operand stack.
+     */
+    private static class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int stack = 0;
+        private int maxStack = 0;
+
+        /**
+         * @param stackChange The amount of stack slots the instruction adds or removes, longs use two slots.
+         */
+        private Code write(int opcode, int stackChange) {
+            bytes.write(opcode);
+            stack += stackChange;
+            maxStack = Math.max(maxStack, stack);
+            return this;
+        }
+
+        private Code writeShort(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        private Code writeInt(int value) {
+            if (value >= -1 && value <= 5) return write(ICONST_0 + value, 1);
+            if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                write(BIPUSH, 1);
+                bytes.write(value);
+                return this;
+            }
+            return write(SIPUSH, 1).writeShort(value);
+        }
+
+        private int length() {
+            return bytes.size();
+        }
+    }
+
+    private static class GeneratedClassLoader extends ClassLoader {
+        private GeneratedClassLoader() {
+            super(BooleanExpression.class.getClassLoader());
+        }
+
+        private Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+}
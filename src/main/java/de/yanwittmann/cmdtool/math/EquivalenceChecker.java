@@ -0,0 +1,143 @@
+package de.yanwittmann.cmdtool.math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Checks whether two expressions are equivalent by evaluating both of them over the union of their variables.<br>
+ * The evaluation stops at the first assignment the expressions differ in, which is returned as counterexample.
+ * Expressions with more than {@link #MAX_TRUTH_TABLE_VARIABLES} variables are checked using the {@link SatSolver}
+ * instead of enumerating the truth table, or using a {@link BinaryDecisionDiagram} if requested.
+ */
+public abstract class EquivalenceChecker {
+
+    public final static int MAX_TRUTH_TABLE_VARIABLES = 20;
+
+    public static Result check(String expression1, String expression2) {
+        List<String> variables = getVariables(expression1, expression2);
+        BooleanExpression compiled1 = BooleanExpressionCompiler.compile(expression1, variables);
+        BooleanExpression compiled2 = BooleanExpressionCompiler.compile(expression2, variables);
+        if (variables.size() > MAX_TRUTH_TABLE_VARIABLES) return checkWithSatSolver(compiled1, compiled2, variables);
+        return checkWithTruthTable(compiled1, compiled2, variables);
+    }
+
+    /**
+     * Checks the expressions by building both of them in the same {@link BinaryDecisionDiagram}. Since the diagram is
+     * canonical, they are equivalent exactly when they are represented by the same node.
+     */
+    public static Result checkWithBdd(String expression1, String expression2) {
+        List<String> variables = getVariables(expression1, expression2);
+        BooleanExpression compiled1 = BooleanExpressionCompiler.compile(expression1, variables);
+        BooleanExpression compiled2 = BooleanExpressionCompiler.compile(expression2, variables);
+
+        BinaryDecisionDiagram diagram = BinaryDecisionDiagram.forExpression(new BooleanExpression.Xor(compiled1, compiled2), variables.size());
+        int root1 = diagram.build(compiled1);
+        int root2 = diagram.build(compiled2);
+        if (root1 == root2) return new Result(variables, true, null, false, false);
+
+        boolean[] bits = diagram.getSatisfyingAssignment(diagram.xor(root1, root2));
+        boolean[] counterexample = new boolean[variables.size()];
+        for (int i = 0; i < variables.size(); i++)
+            counterexample[i] = bits[variables.size() - 1 - i];
+        return new Result(variables, false, counterexample, diagram.evaluate(root1, bits), diagram.evaluate(root2, bits));
+    }
+
+    private static List<String> getVariables(String expression1, String expression2) {
+        TreeSet<String> variableSet = new TreeSet<>(ExpressionEvaluation.extractVariables(expression1));
+        variableSet.addAll(ExpressionEvaluation.extractVariables(expression2));
+        return new ArrayList<>(variableSet);
+    }
+
+    public static Result checkWithTruthTable(BooleanExpression compiled1, BooleanExpression compiled2, List<String> variables) {
+        compiled1 = ExpressionEvaluation.compileForRows(compiled1, variables.size());
+        compiled2 = ExpressionEvaluation.compileForRows(compiled2, variables.size());
+        BitParallelTruthTable truthTable = new BitParallelTruthTable(compiled1, variables.size());
+
+        long wordMask = BitParallelTruthTable.getWordMask(variables.size());
+        long[] words = new long[Long.SIZE];
+        for (long w = 0; w < truthTable.getWordCount(); w++) {
+            BitParallelTruthTable.fillVariableWords(w, variables.size(), words);
+            long difference = (compiled1.evaluate(words) ^ compiled2.evaluate(words)) & wordMask;
+            if (difference != 0) {
+                long row = (w << 6) + Long.numberOfTrailingZeros(difference);
+                boolean[] counterexample = new boolean[variables.size()];
+                for (int i = 0; i < variables.size(); i++)
+                    counterexample[i] = ((row >>> (variables.size() - 1 - i)) & 1L) != 0;
+                return new Result(variables, false, counterexample, compiled1.evaluate(row), compiled2.evaluate(row));
+            }
+        }
+        return new Result(variables, true, null, false, false);
+    }
+
+    /**
+     * Encodes both expressions and asks the solver for an assignment in which their results differ. If there is
+     * none, the expressions are equivalent.
+     *
+     * @param compiled1 The first expression.
+     * @param compiled2 The second expression.
+     * @param variables The union of the variables of both expressions.
+     * @return The result of the check.
+     */
+    public static Result checkWithSatSolver(BooleanExpression compiled1, BooleanExpression compiled2, List<String> variables) {
+        TseitinEncoder encoder = new TseitinEncoder(variables.size());
+        int literal1 = encoder.encode(compiled1);
+        int literal2 = encoder.encode(compiled2);
+        encoder.addClause(literal1, literal2);
+        encoder.addClause(-literal1, -literal2);
+        SatSolver solver = encoder.createSolver();
+
+        if (!solver.solve()) return new Result(variables, true, null, false, false);
+
+        boolean[] counterexample = new boolean[variables.size()];
+        for (int i = 0; i < variables.size(); i++)
+            counterexample[i] = solver.getValue(variables.size() - i);
+        return new Result(variables, false, counterexample,
+                solver.getValue(Math.abs(literal1)) == literal1 > 0,
+                solver.getValue(Math.abs(literal2)) == literal2 > 0);
+    }
+
+    public static class Result {
+        private final List<String> variables;
+        private final boolean equivalent;
+        private final boolean[] counterexample;
+        private final boolean result1;
+        private final boolean result2;
+
+        public Result(List<String> variables, boolean equivalent, boolean[] counterexample, boolean result1, boolean result2) {
+            this.variables = variables;
+            this.equivalent = equivalent;
+            this.counterexample = counterexample;
+            this.result1 = result1;
+            this.result2 = result2;
+        }
+
+        public List<String> getVariables() {
+            return variables;
+        }
+
+        public boolean isEquivalent() {
+            return equivalent;
+        }
+
+        /**
+         * @return The values of the variables for which the expressions differ, <code>null</code> if the expressions
+         * are equivalent.
+         */
+        public boolean[] getCounterexample() {
+            return counterexample;
+        }
+
+        public boolean getResult1() {
+            return result1;
+        }
+
+        public boolean getResult2() {
+            return result2;
+        }
+
+        public String formatCounterexample() {
+            return SatisfiabilityChecker.formatAssignment(variables, counterexample);
+        }
+    }
+}
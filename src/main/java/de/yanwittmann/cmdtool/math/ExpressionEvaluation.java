@@ -1,146 +1,355 @@
 package de.yanwittmann.cmdtool.math;
 
-import com.fathzer.soft.javaluator.Operator;
 import de.yanwittmann.cmdtool.Main;
-import de.yanwittmann.cmdtool.util.Util;
 
+import java.io.*;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public abstract class ExpressionEvaluation {
 
+    public final static int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    private final static int MINTERMS_PER_LINE = 32;
+
+    /**
+     * Truth tables with at least this many rows evaluate their expressions using classes generated by the
+     * {@link BytecodeExpressionCompiler}. For smaller tables, generating the class takes longer than walking the tree.
+     * The default can be changed using the system property <code>cmdtool.bytecodeRows</code>.
+     */
+    private static volatile long bytecodeRowThreshold = Long.getLong("cmdtool.bytecodeRows", 1L << 16);
+
+    public static long getBytecodeRowThreshold() {
+        return bytecodeRowThreshold;
+    }
+
+    /**
+     * @param rows The minimum amount of rows a truth table needs to evaluate its expressions using generated classes,
+     *             {@link Long#MAX_VALUE} to always walk the expression trees.
+     */
+    public static void setBytecodeRowThreshold(long rows) {
+        if (rows < 0) throw new IllegalArgumentException("The row threshold cannot be negative: " + rows);
+        bytecodeRowThreshold = rows;
+    }
+
+    /**
+     * @return The expression compiled into a generated class if the truth table has enough rows, otherwise the
+     * expression itself.
+     * @throws IllegalArgumentException If a truth table cannot have that many variables, checked before compiling.
+     */
+    static BooleanExpression compileForRows(BooleanExpression expression, int variableCount) {
+        BitParallelTruthTable.checkVariableCount(variableCount);
+        if ((1L << variableCount) >= bytecodeRowThreshold)
+            return BytecodeExpressionCompiler.compile(expression);
+        return expression;
+    }
+
     public static List<String> extractVariables(String expression) {
-        expression = expression.replace(")", " ").replace("(", " ");
-        List<String> operands = TreeBooleanEvaluator.getPARAMETERS().getOperators().stream().map(Operator::getSymbol).collect(Collectors.toList());
-        operands.add("TRUE");
-        operands.add("FALSE");
-        operands.add("TT");
-        operands.add("FF");
-        for (int i = operands.size() - 1; i >= 0; i--) operands.add(operands.get(i).toLowerCase());
-        operands = Util.reverse(operands.stream().distinct().sorted(Comparator.comparing(String::length))).collect(Collectors.toList());
-        for (String operator : operands) {
-            if (operator.length() > 1) {
-                expression = expression.replace(operator, " ");
-            } else {
-                String quoted = Pattern.quote(operator);
-                expression = expression.replaceAll(quoted + "($| )", " ").replaceAll("(^| )" + quoted, " ");
-            }
-        }
-        expression = expression.replaceAll("[^a-zA-Z0-9][01][^a-zA-Z0-9]", "");
-        return Arrays.stream(expression.split(" "))
-                .filter(v -> v.length() > 0)
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
+        return TreeBooleanEvaluator.getLexer().tokenize(expression).getVariables();
+    }
+
+    /**
+     * Compiles the expressions like {@link #writeTruthTableFromMultipleExpressions(List, List, Writer)} without
+     * evaluating them, to check the input before the table is built.
+     *
+     * @throws IllegalArgumentException If an expression cannot be compiled or the table has too many variables.
+     */
+    public static void validateMultipleExpressions(List<String> variables, List<String> expressions) {
+        new CompiledTable(variables, expressions);
     }
 
     public static String buildTruthTableFromMultipleExpressions(List<String> variables, List<String> expressions) {
-        // extract assignments from expressions
-        Map<String, String> expressionsWithAssignment = new LinkedHashMap<>();
-        for (String expression : expressions) {
-            Matcher matcher = Pattern.compile("([a-zA-Z0-9]+) ?= ?(.+)").matcher(expression.replaceAll("(?<!<)=>", " => "));
-            if (matcher.find()) {
-                expressionsWithAssignment.put(matcher.group(1), matcher.group(2));
-            } else {
-                expressionsWithAssignment.put(expression, expression);
-            }
+        StringWriter writer = new StringWriter();
+        try {
+            writeTruthTableFromMultipleExpressions(variables, expressions, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        return writer.toString();
+    }
+
+    public static void writeTruthTableFromMultipleExpressions(List<String> variables, List<String> expressions, Writer writer) throws IOException {
+        writeTruthTableFromMultipleExpressions(variables, expressions, writer, DEFAULT_THREADS);
+    }
 
-        List<List<String>> columns = new ArrayList<>();
+    public static void writeTruthTableFromMultipleExpressions(List<String> variables, List<String> expressions, Writer writer, int threads) throws IOException {
+        writeTruthTableFromMultipleExpressions(variables, expressions, header -> new TruthTableWriter(writer, header), threads);
+    }
+
+    public static void writeTruthTableFromMultipleExpressions(List<String> variables, List<String> expressions, OutputStream stream, Charset charset, int threads) throws IOException {
+        writeTruthTableFromMultipleExpressions(variables, expressions, header -> new TruthTableWriter(stream, charset, header), threads);
+    }
+
+    private static void writeTruthTableFromMultipleExpressions(List<String> variables, List<String> expressions, Function<List<String>, TruthTableWriter> tableWriters, int threads) throws IOException {
+        CompiledTable table = new CompiledTable(variables, expressions);
         List<String> headerRow = new ArrayList<>(variables);
-        expressionsWithAssignment.entrySet().stream().map(e -> e.getValue().equals(e.getKey()) ? Main.normalizeExpressionOutput(e.getKey()) : e.getKey() + " = " + Main.normalizeExpressionOutput(e.getValue())).forEach(headerRow::add);
-        columns.add(headerRow);
-
-        // iterate through all input combinations to generate every row of the truth table
-        TreeBooleanEvaluator evaluator = new TreeBooleanEvaluator();
-        int amountCombinations = (int) Math.pow(2, variables.size());
-        for (int i = 0; i < amountCombinations; i++) {
-            List<String> inputs = Arrays.stream(String.format("%" + variables.size() + "s", Integer.toBinaryString(i)).replace(" ", "0").split("")).collect(Collectors.toList());
-            List<String> row = new ArrayList<>(inputs);
-            final MyEvaluatorContext<String> evaluationContext = buildEvaluationContextForVariables(variables, inputs);
+        headerRow.addAll(table.header);
+
+        int variableCount = variables.size();
+        long amountCombinations = 1L << variableCount;
+        TruthTableWriter tableWriter = tableWriters.apply(headerRow);
+        tableWriter.writeHeader();
+        tableWriter.writeWords(BitParallelTruthTable.getWordCount(variableCount), threads, (w, words, rowWriter) -> {
+            long[] results = table.evaluateWord(w, words);
+            for (int b = 0; b < Long.SIZE && (w << 6) + b < amountCombinations; b++) {
+                rowWriter.setInputCells((w << 6) + b, variableCount);
+                for (int j = 0; j < results.length; j++)
+                    rowWriter.setCell(variableCount + j, BitParallelTruthTable.getBit(results[j], b));
+                rowWriter.writeRow();
+            }
+        });
+    }
+
+    /**
+     * Minimizes every column of the truth table built from the expressions as function of the input variables.
+     *
+     * @param variables     The input variables.
+     * @param expressions   The expressions, as passed to {@link #writeTruthTableFromMultipleExpressions(List, List, Writer)}.
+     * @param productOfSums Whether to minimize into a product of sums instead of a sum of products.
+     * @return The minimized columns, mapped by the name of the assigned variable or the expression itself.
+     */
+    public static Map<String, LogicMinimizer.Cover> minimizeMultipleExpressions(List<String> variables, List<String> expressions, boolean productOfSums) {
+        if (variables.size() > LogicMinimizer.MAX_VARIABLES)
+            throw new IllegalArgumentException("Too many variables to minimize: " + variables.size() + " (max " + LogicMinimizer.MAX_VARIABLES + ")");
+        CompiledTable table = new CompiledTable(variables, expressions);
+
+        int wordCount = (int) BitParallelTruthTable.getWordCount(variables.size());
+        long[][] columns = new long[table.names.size()][wordCount];
+        long[] words = new long[Long.SIZE];
+        for (int w = 0; w < wordCount; w++) {
+            long[] results = table.evaluateWord(w, words);
+            for (int j = 0; j < results.length; j++) columns[j][w] = results[j];
+        }
+
+        Map<String, LogicMinimizer.Cover> minimized = new LinkedHashMap<>();
+        for (int j = 0; j < columns.length; j++) {
+            LogicMinimizer minimizer = new LogicMinimizer(columns[j], variables.size());
+            minimized.put(table.names.get(j), productOfSums ? minimizer.minimizeProductOfSums() : minimizer.minimizeSumOfProducts());
+        }
+        return minimized;
+    }
+
+    /**
+     * The expressions of a truth table built from multiple expressions, each compiled once. Expressions can assign
+     * their result to a new variable using <code>[VAR] = [EXPR]</code>, those are stored in the bits above the input
+     * variables and can be used by the following expressions.
+     */
+    private static class CompiledTable {
+        private final int variableCount;
+        private final List<String> names = new ArrayList<>();
+        private final List<String> header = new ArrayList<>();
+        private final List<BooleanExpression> compiledExpressions = new ArrayList<>();
+        private final List<Integer> assignedBits = new ArrayList<>();
+
+        private CompiledTable(List<String> variables, List<String> expressions) {
+            this.variableCount = variables.size();
+            BitParallelTruthTable.checkVariableCount(variableCount);
+
+            // extract assignments from expressions
+            Map<String, String> expressionsWithAssignment = new LinkedHashMap<>();
+            for (String expression : expressions) {
+                Matcher matcher = Pattern.compile("([a-zA-Z0-9]+) ?= ?(.+)").matcher(expression.replaceAll("(?<!<)=>", " => "));
+                if (matcher.find()) {
+                    expressionsWithAssignment.put(matcher.group(1), matcher.group(2));
+                } else {
+                    expressionsWithAssignment.put(expression, expression);
+                }
+            }
+
+            for (Map.Entry<String, String> e : expressionsWithAssignment.entrySet()) {
+                boolean assignment = !e.getValue().equals(e.getKey());
+                names.add(assignment ? e.getKey() : Main.normalizeExpressionOutput(e.getKey()));
+                header.add(assignment ? e.getKey() + " = " + Main.normalizeExpressionOutput(e.getValue()) : Main.normalizeExpressionOutput(e.getKey()));
+            }
+
+            // compile every expression once, assigned variables are stored in the bits above the input variables
+            Map<String, Integer> variableBits = BooleanExpressionCompiler.getVariableBits(variables);
             for (Map.Entry<String, String> expressionEntry : expressionsWithAssignment.entrySet()) {
-                String result = TreeBooleanEvaluator.evaluate(evaluator, evaluationContext, expressionEntry.getValue()) ? "1" : "0";
-                row.add(result);
-                evaluationContext.set(expressionEntry.getKey(), result);
+                BooleanExpression compiledExpression = new BooleanExpressionCompiler(new HashMap<>(variableBits)).compile(expressionEntry.getValue());
+                compiledExpressions.add(compileForRows(compiledExpression, variables.size()));
+                if (expressionEntry.getKey().equals(expressionEntry.getValue())) {
+                    assignedBits.add(-1);
+                    continue;
+                }
+                if (!variableBits.containsKey(expressionEntry.getKey())) {
+                    if (variableBits.size() >= Long.SIZE)
+                        throw new IllegalArgumentException("Too many variables in the truth table, cannot assign " + expressionEntry.getKey());
+                    variableBits.put(expressionEntry.getKey(), variableBits.size());
+                }
+                assignedBits.add(variableBits.get(expressionEntry.getKey()));
             }
-            columns.add(row);
         }
 
-        return Util.formatAsTable(columns, true, true);
+        /**
+         * Evaluates 64 input combinations at once, the results of assignments are stored in the words of their bits.
+         *
+         * @return The results of all expressions for the rows of the word.
+         */
+        private long[] evaluateWord(long wordIndex, long[] words) {
+            long wordMask = BitParallelTruthTable.getWordMask(variableCount);
+            BitParallelTruthTable.fillVariableWords(wordIndex, variableCount, words);
+            long[] results = new long[compiledExpressions.size()];
+            for (int j = 0; j < compiledExpressions.size(); j++) {
+                results[j] = compiledExpressions.get(j).evaluate(words) & wordMask;
+                if (assignedBits.get(j) != -1) words[assignedBits.get(j)] = results[j];
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Writes the indices of all rows of the truth table the expression is true in, separated by commas. The index of a
+     * row is the binary number formed by the values of the variables, the first variable being the highest bit.<br>
+     * The rows are evaluated 64 at a time and written directly, so the table is never built.
+     *
+     * @param expression The expression to find the minterms of.
+     * @param writer     The writer to write the minterms to.
+     * @return The amount of minterms.
+     * @throws IOException If the minterms cannot be written.
+     */
+    public static long writeMinterms(String expression, Writer writer) throws IOException {
+        List<String> variables = extractVariables(expression);
+        BooleanExpression compiledExpression = compileForRows(BooleanExpressionCompiler.compile(expression, variables), variables.size());
+        BitParallelTruthTable truthTable = new BitParallelTruthTable(compiledExpression, variables.size());
+
+        long count = 0;
+        long[] words = new long[Long.SIZE];
+        for (long w = 0; w < truthTable.getWordCount(); w++) {
+            long result = truthTable.evaluateWord(w, words);
+            while (result != 0) {
+                if (count > 0) writer.write(count % MINTERMS_PER_LINE == 0 ? ",\n" : ", ");
+                writer.write(Long.toString((w << 6) + Long.numberOfTrailingZeros(result)));
+                result &= result - 1;
+                count++;
+            }
+        }
+        if (count > 0) writer.write('\n');
+        return count;
+    }
+
+    public static String generateTruthTable(String expression) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeTruthTable(expression, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
     }
 
     /**
      * <ol>
      *     <li>Extract variables from expression</li>
-     *     <li>Iterate over all possible combinations</li>
-     *     <li>Evaluate the expression with the current variable context</li>
+     *     <li>Compile the expression once</li>
+     *     <li>Evaluate the compiled expression for 64 combinations at a time</li>
+     *     <li>Write the rows directly to the writer</li>
      * </ol>
+     * Only a few chunks of rows are kept in memory, so the amount of variables is only limited by the time it takes to
+     * write the table. The chunks are evaluated on {@link #DEFAULT_THREADS} threads.
      *
      * @param expression The expression to create the truth table for.
-     * @return The table as a string.
+     * @param writer     The writer to write the table to.
+     * @throws IOException If the table cannot be written.
      */
-    public static String generateTruthTable(String expression) {
-        TreeBooleanEvaluator evaluator = new TreeBooleanEvaluator();
-        List<String> variables = extractVariables(expression);
-        List<BasicTruthTableEntry> truthTableEntries = new ArrayList<>();
+    public static void writeTruthTable(String expression, Writer writer) throws IOException {
+        writeTruthTable(expression, writer, DEFAULT_THREADS);
+    }
 
-        int amountCombinations = (int) Math.pow(2, variables.size());
-        for (int i = 0; i < amountCombinations; i++) {
-            List<String> inputs = Arrays.stream(String.format("%" + variables.size() + "s", Integer.toBinaryString(i)).replace(" ", "0").split("")).collect(Collectors.toList());
-            final MyEvaluatorContext<String> evaluationContext = buildEvaluationContextForVariables(variables, inputs);
-            truthTableEntries.add(new BasicTruthTableEntry(evaluationContext, inputs));
-        }
+    /**
+     * Writes the truth table like {@link #writeTruthTable(String, Writer)}, but splits the rows into chunks that are
+     * evaluated and formatted on the given amount of threads. The rows are still written in order.
+     *
+     * @param expression The expression to create the truth table for.
+     * @param writer     The writer to write the table to.
+     * @param threads    The amount of threads to use.
+     * @throws IOException If the table cannot be written.
+     */
+    public static void writeTruthTable(String expression, Writer writer, int threads) throws IOException {
+        writeTruthTable(expression, header -> new TruthTableWriter(writer, header), threads, false);
+    }
 
-        truthTableEntries.forEach(e -> e.evaluate(evaluator, expression));
-        List<List<String>> tableList = new ArrayList<>();
-        List<String> tableHead = new ArrayList<>(variables);
-        tableHead.add("out");
-        tableList.add(tableHead);
-        for (BasicTruthTableEntry entry : truthTableEntries) {
-            List<String> tableRow = new ArrayList<>(entry.getInputs());
-            tableRow.add(entry.getResult() ? "1" : "0");
-            tableList.add(tableRow);
-        }
-        return Util.formatAsTable(tableList, true, true);
+    /**
+     * Writes the truth table like {@link #writeTruthTable(String, Writer, int)}, but the rows are also encoded on the
+     * threads that evaluate them.
+     */
+    public static void writeTruthTable(String expression, OutputStream stream, Charset charset, int threads) throws IOException {
+        writeTruthTable(expression, header -> new TruthTableWriter(stream, charset, header), threads, false);
     }
 
-    private static MyEvaluatorContext<String> buildEvaluationContextForVariables(List<String> variables, List<String> inputs) {
-        final MyEvaluatorContext<String> evaluationContext = new MyEvaluatorContext<>();
-        for (int j = 0; j < variables.size() && j < inputs.size(); j++)
-            evaluationContext.set(variables.get(j), inputs.get(j));
-        return evaluationContext;
+    /**
+     * Writes the truth table like {@link #writeTruthTable(String, Writer, int)}, with an additional column for every
+     * sub-expression between the input columns and the <code>out</code> column. The sub-expressions are ordered like
+     * they are evaluated, equal sub-expressions only get a single column.
+     */
+    public static void writeTruthTableWithSteps(String expression, Writer writer, int threads) throws IOException {
+        writeTruthTable(expression, header -> new TruthTableWriter(writer, header), threads, true);
     }
 
-    private static class BasicTruthTableEntry {
-        private Map<String, Boolean> results = new LinkedHashMap<>();
-        private boolean result;
-        private MyEvaluatorContext<String> evaluationContext;
-        private List<String> inputs;
+    /**
+     * Writes the truth table like {@link #writeTruthTableWithSteps(String, Writer, int)}, but the rows are also
+     * encoded on the threads that evaluate them.
+     */
+    public static void writeTruthTableWithSteps(String expression, OutputStream stream, Charset charset, int threads) throws IOException {
+        writeTruthTable(expression, header -> new TruthTableWriter(stream, charset, header), threads, true);
+    }
 
-        public BasicTruthTableEntry(MyEvaluatorContext<String> evaluationContext, List<String> inputs) {
-            this.evaluationContext = evaluationContext;
-            this.inputs = inputs;
-        }
+    private static void writeTruthTable(String expression, Function<List<String>, TruthTableWriter> tableWriters, int threads, boolean steps) throws IOException {
+        List<String> variables = extractVariables(expression);
+        BooleanExpression compiledExpression = BooleanExpressionCompiler.compile(expression, variables);
 
-        public boolean getResult() {
-            return result;
+        Map<String, BooleanExpression> subExpressions = new LinkedHashMap<>();
+        if (steps) {
+            collectSubExpressions(compiledExpression, subExpressions);
+            subExpressions.remove(compiledExpression.toString());
         }
+        BooleanExpression[] stepExpressions = subExpressions.values().toArray(new BooleanExpression[0]);
 
-        public Map<String, Boolean> getResults() {
-            return results;
-        }
+        List<String> tableHead = new ArrayList<>(variables);
+        for (BooleanExpression subExpression : stepExpressions) tableHead.add(subExpression.toString(Main::getOperatorSymbol));
+        tableHead.add("out");
+        TruthTableWriter tableWriter = tableWriters.apply(tableHead);
+        tableWriter.writeHeader();
 
-        public List<String> getInputs() {
-            return inputs;
-        }
+        BitParallelTruthTable truthTable = new BitParallelTruthTable(compileForRows(compiledExpression, variables.size()), variables.size());
+        tableWriter.writeWords(truthTable.getWordCount(), threads, (w, words, rowWriter) -> {
+            long result = truthTable.evaluateWord(w, words);
+            long[] stepResults = new long[stepExpressions.length];
+            for (int i = 0; i < stepExpressions.length; i++) stepResults[i] = stepExpressions[i].evaluate(words);
+            for (int b = 0; b < Long.SIZE && (w << 6) + b < truthTable.getRowCount(); b++) {
+                rowWriter.setInputCells((w << 6) + b, variables.size());
+                for (int i = 0; i < stepResults.length; i++)
+                    rowWriter.setCell(variables.size() + i, BitParallelTruthTable.getBit(stepResults[i], b));
+                rowWriter.setCell(variables.size() + stepResults.length, BitParallelTruthTable.getBit(result, b));
+                rowWriter.writeRow();
+            }
+        });
+    }
 
-        public void evaluate(TreeBooleanEvaluator evaluator, String expression) {
-            result = TreeBooleanEvaluator.evaluate(evaluator, evaluationContext, expression);
-            results.putAll(evaluationContext.getSequenceStack());
+    /**
+     * Collects the operator nodes of the expression in the order they are evaluated, using their text as key.
+     */
+    private static void collectSubExpressions(BooleanExpression expression, Map<String, BooleanExpression> subExpressions) {
+        // walks the tree in post order without recursion, the operands of a node are collected before the node itself
+        Deque<BooleanExpression> pending = new ArrayDeque<>();
+        Set<BooleanExpression> expanded = Collections.newSetFromMap(new IdentityHashMap<>());
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            BooleanExpression current = pending.peek();
+            if (expanded.add(current)) {
+                if (current instanceof BooleanExpression.Not) {
+                    pending.push(((BooleanExpression.Not) current).getOperand());
+                    continue;
+                } else if (current instanceof BooleanExpression.Binary) {
+                    pending.push(((BooleanExpression.Binary) current).getRight());
+                    pending.push(((BooleanExpression.Binary) current).getLeft());
+                    continue;
+                }
+            }
+            pending.pop();
+            if (current instanceof BooleanExpression.Not || current instanceof BooleanExpression.Binary)
+                subExpressions.putIfAbsent(current.toString(), current);
         }
     }
-
-
 }
@@ -0,0 +1,110 @@
+package de.yanwittmann.cmdtool.math;
+
+import java.util.*;
+
+/**
+ * Splits an expression into operator, bracket and literal tokens in a single pass, collecting the variables on the way.
+ * <br>
+ * The operator symbols are grouped by their first character and sorted by length, so at every position only the
+ * symbols that can start there are compared, the longest one first. Symbols that start or end with a letter or digit
+ * (like <code>OR</code> or <code>!AND</code>) only match on word boundaries, which allows variables such as
+ * <code>ORDER</code> or <code>BAND</code>. Other symbols (like <code>!</code> or <code>=&gt;</code>) also split
+ * literals that they appear in.<br>
+ * Literals that are not constants are variables.
+ */
+public class ExpressionLexer {
+
+    private final Map<Character, String[]> symbolsByFirstCharacter = new HashMap<>();
+    private final Set<String> constants;
+
+    /**
+     * @param symbols   The symbols of the operators and brackets.
+     * @param constants The literals that are not variables.
+     */
+    public ExpressionLexer(Collection<String> symbols, Collection<String> constants) {
+        Map<Character, List<String>> grouped = new HashMap<>();
+        for (String symbol : new LinkedHashSet<>(symbols))
+            grouped.computeIfAbsent(symbol.charAt(0), c -> new ArrayList<>()).add(symbol);
+        for (Map.Entry<Character, List<String>> group : grouped.entrySet()) {
+            group.getValue().sort(Comparator.comparingInt(String::length).reversed());
+            symbolsByFirstCharacter.put(group.getKey(), group.getValue().toArray(new String[0]));
+        }
+        this.constants = new HashSet<>(constants);
+    }
+
+    public Result tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        Set<String> variables = new HashSet<>();
+        int length = expression.length();
+        int position = 0;
+        while (position < length) {
+            char c = expression.charAt(position);
+            if (Character.isWhitespace(c)) {
+                position++;
+                continue;
+            }
+
+            String symbol = matchSymbol(expression, position);
+            if (symbol != null) {
+                tokens.add(symbol);
+                position += symbol.length();
+                continue;
+            }
+
+            // a literal ends at whitespace or at a symbol that can start inside of a word
+            int start = position++;
+            while (position < length) {
+                char next = expression.charAt(position);
+                if (Character.isWhitespace(next) || (!isWordCharacter(next) && matchSymbol(expression, position) != null)) break;
+                position++;
+            }
+            String literal = expression.substring(start, position);
+            tokens.add(literal);
+            if (!constants.contains(literal)) variables.add(literal);
+        }
+
+        List<String> sortedVariables = new ArrayList<>(variables);
+        Collections.sort(sortedVariables);
+        return new Result(tokens, sortedVariables);
+    }
+
+    private String matchSymbol(String expression, int position) {
+        String[] candidates = symbolsByFirstCharacter.get(expression.charAt(position));
+        if (candidates == null) return null;
+        for (String symbol : candidates) {
+            int end = position + symbol.length();
+            if (!expression.startsWith(symbol, position)) continue;
+            if (isWordCharacter(symbol.charAt(0)) && position > 0 && isWordCharacter(expression.charAt(position - 1)))
+                continue;
+            if (isWordCharacter(symbol.charAt(symbol.length() - 1)) && end < expression.length() && isWordCharacter(expression.charAt(end)))
+                continue;
+            return symbol;
+        }
+        return null;
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    public static class Result {
+        private final List<String> tokens;
+        private final List<String> variables;
+
+        public Result(List<String> tokens, List<String> variables) {
+            this.tokens = tokens;
+            this.variables = variables;
+        }
+
+        public List<String> getTokens() {
+            return tokens;
+        }
+
+        /**
+         * @return The distinct variables of the expression in alphabetical order.
+         */
+        public List<String> getVariables() {
+            return variables;
+        }
+    }
+}
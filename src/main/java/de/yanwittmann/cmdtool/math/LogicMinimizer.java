@@ -0,0 +1,475 @@
+package de.yanwittmann.cmdtool.math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Minimizes a boolean function given by the rows of its truth table into a sum of products or a product of sums.<br>
+ * Products are stored as cubes of two bitmasks over the rows of the truth table: the <code>mask</code> contains the
+ * bits of the variables that appear in the product, the <code>value</code> contains their required values. A row
+ * <code>r</code> is part of the cube if <code>(r &amp; mask) == value</code>.
+ * <ul>
+ *     <li>Functions with up to {@link #MAX_EXACT_VARIABLES} variables are minimized exactly, using Quine-McCluskey to
+ *     find all prime implicants and a branch and bound search for the cheapest set of primes covering the function.</li>
+ *     <li>Larger functions use an Espresso-style heuristic: every row that is not covered yet is expanded into a prime
+ *     implicant, preferring the variables that cover the most uncovered rows, and redundant implicants are removed
+ *     afterwards.</li>
+ * </ul>
+ * A product of sums is found by minimizing the complement of the function and applying De Morgan's laws.
+ */
+public class LogicMinimizer {
+
+    public final static int MAX_VARIABLES = 24;
+    public final static int MAX_EXACT_VARIABLES = 12;
+    private final static int MAX_COVER_SEARCH_STEPS = 1 << 16;
+
+    private final int variableCount;
+    private final long[] onset;
+    private final long rowMask;
+
+    /**
+     * @param onset         The truth table as bit set, row <code>r</code> is stored in bit <code>r % 64</code> of word
+     *                      <code>r / 64</code>, see {@link BitParallelTruthTable#evaluate()}.
+     * @param variableCount The amount of variables, the first variable is the highest bit of the row index.
+     */
+    public LogicMinimizer(long[] onset, int variableCount) {
+        if (variableCount > MAX_VARIABLES)
+            throw new IllegalArgumentException("Too many variables to minimize: " + variableCount + " (max " + MAX_VARIABLES + ")");
+        if (onset.length != BitParallelTruthTable.getWordCount(variableCount))
+            throw new IllegalArgumentException("The truth table of " + variableCount + " variables needs " + BitParallelTruthTable.getWordCount(variableCount) + " words");
+        this.variableCount = variableCount;
+        this.onset = onset;
+        this.rowMask = (1L << variableCount) - 1;
+    }
+
+    public static LogicMinimizer forExpression(BooleanExpression expression, int variableCount) {
+        if (variableCount > MAX_VARIABLES)
+            throw new IllegalArgumentException("Too many variables to minimize: " + variableCount + " (max " + MAX_VARIABLES + ")");
+        return new LogicMinimizer(new BitParallelTruthTable(ExpressionEvaluation.compileForRows(expression, variableCount), variableCount).evaluate(), variableCount);
+    }
+
+    public Cover minimizeSumOfProducts() {
+        return minimize(onset, false);
+    }
+
+    public Cover minimizeProductOfSums() {
+        long[] offset = new long[onset.length];
+        long wordMask = BitParallelTruthTable.getWordMask(variableCount);
+        for (int w = 0; w < onset.length; w++) offset[w] = ~onset[w] & wordMask;
+        return minimize(offset, true);
+    }
+
+    private Cover minimize(long[] function, boolean productOfSums) {
+        if (variableCount <= MAX_EXACT_VARIABLES) return minimizeExact(function, productOfSums);
+        return minimizeHeuristic(function, productOfSums);
+    }
+
+    /**
+     * Every cube is identified by a ternary number, where digit <code>d</code> is the value of bit <code>d</code>
+     * (<code>0</code> or <code>1</code>) or <code>2</code> if the bit is not part of the cube. A cube with a free
+     * digit is an implicant if both cubes with that digit set to <code>0</code> and <code>1</code> are implicants,
+     * those have smaller numbers, so all implicants can be found in a single pass. Implicants that cannot be extended
+     * by freeing another digit are the prime implicants.
+     */
+    private Cover minimizeExact(long[] function, boolean productOfSums) {
+        int[] powers = new int[variableCount + 1];
+        powers[0] = 1;
+        for (int d = 0; d < variableCount; d++) powers[d + 1] = powers[d] * 3;
+
+        boolean[] implicants = new boolean[powers[variableCount]];
+        for (int cube = 0; cube < implicants.length; cube++) {
+            int rest = cube;
+            long row = 0;
+            int freeDigit = -1;
+            for (int d = 0; d < variableCount && freeDigit == -1; d++, rest /= 3) {
+                if (rest % 3 == 2) freeDigit = d;
+                else if (rest % 3 == 1) row |= 1L << d;
+            }
+            if (freeDigit == -1) implicants[cube] = getBit(function, row);
+            else implicants[cube] = implicants[cube - 2 * powers[freeDigit]] && implicants[cube - powers[freeDigit]];
+        }
+
+        List<long[]> primes = new ArrayList<>();
+        for (int cube = 0; cube < implicants.length; cube++) {
+            if (!implicants[cube]) continue;
+            long mask = 0, value = 0;
+            boolean prime = true;
+            int rest = cube;
+            for (int d = 0; d < variableCount && prime; d++, rest /= 3) {
+                int digit = rest % 3;
+                if (digit == 2) continue;
+                mask |= 1L << d;
+                if (digit == 1) value |= 1L << d;
+                prime = !implicants[cube + (2 - digit) * powers[d]];
+            }
+            if (prime) primes.add(new long[]{mask, value});
+        }
+
+        return selectCover(function, primes, productOfSums);
+    }
+
+    /**
+     * Finds the cheapest set of primes that covers all rows of the function. Every row is numbered and every prime
+     * is stored as bit set of the rows it covers. The search always branches on the uncovered row with the fewest
+     * primes, so essential primes are selected first. If the search takes too long, the best cover found so far is
+     * used and the result is not marked as exact.
+     */
+    private Cover selectCover(long[] function, List<long[]> primes, boolean productOfSums) {
+        int[] rowIndices = new int[1 << variableCount];
+        int rowCount = 0;
+        for (int row = 0; row < rowIndices.length; row++)
+            rowIndices[row] = getBit(function, row) ? rowCount++ : -1;
+
+        int setWords = (rowCount + Long.SIZE - 1) / Long.SIZE;
+        long[][] covers = new long[primes.size()][setWords];
+        int[] costs = new int[primes.size()];
+        int[] primeCounts = new int[rowCount];
+        for (int p = 0; p < primes.size(); p++) {
+            long mask = primes.get(p)[0], value = primes.get(p)[1];
+            for (int row = 0; row < rowIndices.length; row++) {
+                if ((row & mask) != value) continue;
+                int index = rowIndices[row];
+                covers[p][index >>> 6] |= 1L << index;
+                primeCounts[index]++;
+            }
+            costs[p] = getCost(mask);
+        }
+        int[][] rowPrimes = new int[rowCount][];
+        for (int r = 0; r < rowCount; r++) rowPrimes[r] = new int[primeCounts[r]];
+        Arrays.fill(primeCounts, 0);
+        for (int p = 0; p < primes.size(); p++)
+            for (int r = 0; r < rowCount; r++)
+                if (((covers[p][r >>> 6] >>> r) & 1L) != 0) rowPrimes[r][primeCounts[r]++] = p;
+
+        CoverSearch search = new CoverSearch(covers, costs, rowPrimes, rowCount);
+        search.search(new long[setWords], new int[primes.size()], 0, 0);
+
+        long[] masks = new long[search.best.length];
+        long[] values = new long[search.best.length];
+        for (int i = 0; i < search.best.length; i++) {
+            masks[i] = primes.get(search.best[i])[0];
+            values[i] = primes.get(search.best[i])[1];
+        }
+        return new Cover(variableCount, masks, values, productOfSums, search.complete);
+    }
+
+    private int getCost(long mask) {
+        // fewer products are always better, fewer literals only decide between covers of the same size
+        return (variableCount + 1) * Long.SIZE + Long.bitCount(mask);
+    }
+
+    private static class CoverSearch {
+        private final long[][] covers;
+        private final int[] costs;
+        private final int[][] rowPrimes;
+        private final int rowCount;
+        private final int minCost;
+
+        private int[] best = null;
+        private int bestCost = Integer.MAX_VALUE;
+        private int steps = 0;
+        private boolean complete = true;
+
+        private CoverSearch(long[][] covers, int[] costs, int[][] rowPrimes, int rowCount) {
+            this.covers = covers;
+            this.costs = costs;
+            this.rowPrimes = rowPrimes;
+            this.rowCount = rowCount;
+            this.minCost = Arrays.stream(costs).min().orElse(0);
+        }
+
+        /**
+         * Rows that do not share any prime each need a different prime, so their amount is a lower bound of the
+         * amount of primes that still have to be selected.
+         */
+        private int getLowerBound(long[] covered) {
+            boolean[] usedPrimes = new boolean[covers.length];
+            int independentRows = 0;
+            for (int r = 0; r < rowCount; r++) {
+                if (((covered[r >>> 6] >>> r) & 1L) != 0) continue;
+                boolean independent = true;
+                for (int prime : rowPrimes[r]) independent &= !usedPrimes[prime];
+                if (!independent) continue;
+                independentRows++;
+                for (int prime : rowPrimes[r]) usedPrimes[prime] = true;
+            }
+            return independentRows;
+        }
+
+        private void search(long[] covered, int[] selected, int selectedCount, int cost) {
+            if (++steps > MAX_COVER_SEARCH_STEPS && best != null) {
+                complete = false;
+                return;
+            }
+
+            int row = -1;
+            for (int r = 0; r < rowCount; r++)
+                if (((covered[r >>> 6] >>> r) & 1L) == 0 && (row == -1 || rowPrimes[r].length < rowPrimes[row].length))
+                    row = r;
+            if (row == -1) {
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = Arrays.copyOf(selected, selectedCount);
+                }
+                return;
+            }
+            if (cost + getLowerBound(covered) * minCost >= bestCost) return;
+
+            // try the primes that cover the most uncovered rows first, to find a good cover early
+            Integer[] candidates = new Integer[rowPrimes[row].length];
+            int[] gains = new int[covers.length];
+            for (int i = 0; i < candidates.length; i++) {
+                int prime = rowPrimes[row][i];
+                candidates[i] = prime;
+                for (int w = 0; w < covered.length; w++) gains[prime] += Long.bitCount(covers[prime][w] & ~covered[w]);
+            }
+            Arrays.sort(candidates, Comparator.comparingInt(prime -> -gains[prime] * Long.SIZE + costs[prime]));
+
+            for (int prime : candidates) {
+                long[] nextCovered = covered.clone();
+                for (int w = 0; w < covered.length; w++) nextCovered[w] |= covers[prime][w];
+                selected[selectedCount] = prime;
+                search(nextCovered, selected, selectedCount + 1, cost + costs[prime]);
+                if (!complete) return;
+            }
+        }
+    }
+
+    private Cover minimizeHeuristic(long[] function, boolean productOfSums) {
+        long[] covered = new long[function.length];
+        List<long[]> cubes = new ArrayList<>();
+        for (int w = 0; w < function.length; w++) {
+            long pending = function[w] & ~covered[w];
+            while (pending != 0) {
+                long[] cube = expand(function, covered, ((long) w << 6) + Long.numberOfTrailingZeros(pending));
+                cubes.add(cube);
+                markCovered(covered, cube[0], cube[1]);
+                pending = function[w] & ~covered[w];
+            }
+        }
+
+        cubes = removeRedundant(cubes);
+        long[] masks = new long[cubes.size()];
+        long[] values = new long[cubes.size()];
+        for (int i = 0; i < cubes.size(); i++) {
+            masks[i] = cubes.get(i)[0];
+            values[i] = cubes.get(i)[1];
+        }
+        return new Cover(variableCount, masks, values, productOfSums, false);
+    }
+
+    /**
+     * Expands the row into a prime implicant by removing one variable at a time. In every step, the variable is chosen
+     * whose removal adds the most rows that are not covered by previous implicants.
+     */
+    private long[] expand(long[] function, long[] covered, long row) {
+        long mask = rowMask;
+        long value = row;
+        while (true) {
+            int bestBit = -1;
+            long bestGain = -1;
+            for (int bit = 0; bit < variableCount; bit++) {
+                if (((mask >>> bit) & 1L) == 0) continue;
+                // the rows that are added by removing the variable form the cube with the opposite value
+                long gain = getUncoveredRows(function, covered, mask, value ^ (1L << bit));
+                if (gain > bestGain) {
+                    bestGain = gain;
+                    bestBit = bit;
+                }
+            }
+            if (bestBit == -1) return new long[]{mask, value};
+            mask &= ~(1L << bestBit);
+            value &= mask;
+        }
+    }
+
+    /**
+     * @return The amount of rows of the cube that are not covered yet, or <code>-1</code> if the cube is not part of
+     * the function.
+     */
+    private long getUncoveredRows(long[] function, long[] covered, long mask, long value) {
+        long pattern = getWordPattern(mask, value);
+        long freeWordBits = ~mask & rowMask & ~0x3FL;
+        long fixedWordBits = value & ~0x3FL;
+        long uncovered = 0;
+        long subset = 0;
+        do {
+            int w = (int) ((fixedWordBits | subset) >>> 6);
+            if ((function[w] & pattern) != pattern) return -1;
+            uncovered += Long.bitCount(pattern & ~covered[w]);
+            subset = (subset - freeWordBits) & freeWordBits;
+        } while (subset != 0);
+        return uncovered;
+    }
+
+    private void markCovered(long[] covered, long mask, long value) {
+        long pattern = getWordPattern(mask, value);
+        long freeWordBits = ~mask & rowMask & ~0x3FL;
+        long fixedWordBits = value & ~0x3FL;
+        long subset = 0;
+        do {
+            covered[(int) ((fixedWordBits | subset) >>> 6)] |= pattern;
+            subset = (subset - freeWordBits) & freeWordBits;
+        } while (subset != 0);
+    }
+
+    /**
+     * Removes implicants all rows of which are also covered by other implicants. Smaller implicants are removed first,
+     * since they are the most likely to be covered by the others.
+     */
+    private List<long[]> removeRedundant(List<long[]> cubes) {
+        if (cubes.size() >= Character.MAX_VALUE) return cubes;
+        char[] coverCounts = new char[1 << variableCount];
+        for (long[] cube : cubes) addCoverCount(coverCounts, cube, 1);
+
+        List<Integer> order = new ArrayList<>(cubes.size());
+        for (int i = 0; i < cubes.size(); i++) order.add(i);
+        order.sort(Comparator.comparingInt(i -> Long.bitCount(~cubes.get(i)[0] & rowMask)));
+        boolean[] redundant = new boolean[cubes.size()];
+        for (int i : order) {
+            long[] cube = cubes.get(i);
+            if (isCoveredTwice(coverCounts, cube)) {
+                addCoverCount(coverCounts, cube, -1);
+                redundant[i] = true;
+            }
+        }
+
+        List<long[]> remaining = new ArrayList<>();
+        for (int i = 0; i < cubes.size(); i++)
+            if (!redundant[i]) remaining.add(cubes.get(i));
+        return remaining;
+    }
+
+    private void addCoverCount(char[] coverCounts, long[] cube, int delta) {
+        long pattern = getWordPattern(cube[0], cube[1]);
+        long freeWordBits = ~cube[0] & rowMask & ~0x3FL;
+        long fixedWordBits = cube[1] & ~0x3FL;
+        long subset = 0;
+        do {
+            int firstRow = (int) (fixedWordBits | subset);
+            for (long bits = pattern; bits != 0; bits &= bits - 1)
+                coverCounts[firstRow + Long.numberOfTrailingZeros(bits)] += delta;
+            subset = (subset - freeWordBits) & freeWordBits;
+        } while (subset != 0);
+    }
+
+    private boolean isCoveredTwice(char[] coverCounts, long[] cube) {
+        long pattern = getWordPattern(cube[0], cube[1]);
+        long freeWordBits = ~cube[0] & rowMask & ~0x3FL;
+        long fixedWordBits = cube[1] & ~0x3FL;
+        long subset = 0;
+        do {
+            int firstRow = (int) (fixedWordBits | subset);
+            for (long bits = pattern; bits != 0; bits &= bits - 1)
+                if (coverCounts[firstRow + Long.numberOfTrailingZeros(bits)] < 2) return false;
+            subset = (subset - freeWordBits) & freeWordBits;
+        } while (subset != 0);
+        return true;
+    }
+
+    /**
+     * The lowest 6 bits of the row select the bit inside of a word, so their part of the cube is the same pattern in
+     * every word of the cube.
+     */
+    private long getWordPattern(long mask, long value) {
+        long pattern = BitParallelTruthTable.getWordMask(variableCount);
+        for (int bit = 0; bit < Math.min(6, variableCount); bit++) {
+            if (((mask >>> bit) & 1L) == 0) continue;
+            long column = BitParallelTruthTable.getVariablePattern(bit);
+            pattern &= ((value >>> bit) & 1L) != 0 ? column : ~column;
+        }
+        return pattern;
+    }
+
+    private static boolean getBit(long[] function, long row) {
+        return ((function[(int) (row >>> 6)] >>> row) & 1L) != 0;
+    }
+
+    public static class Cover {
+        private final int variableCount;
+        private final long[] masks;
+        private final long[] values;
+        private final boolean productOfSums;
+        private final boolean exact;
+
+        public Cover(int variableCount, long[] masks, long[] values, boolean productOfSums, boolean exact) {
+            this.variableCount = variableCount;
+            this.masks = masks;
+            this.values = values;
+            this.productOfSums = productOfSums;
+            this.exact = exact;
+        }
+
+        public int size() {
+            return masks.length;
+        }
+
+        public int getLiteralCount() {
+            return Arrays.stream(masks).mapToInt(Long::bitCount).sum();
+        }
+
+        /**
+         * @return <code>true</code> if the cover has been proven to be minimal.
+         */
+        public boolean isExact() {
+            return exact;
+        }
+
+        /**
+         * @return <code>true</code> if the cubes have been found for the complement of the function and represent the
+         * sums of a product of sums.
+         */
+        public boolean isProductOfSums() {
+            return productOfSums;
+        }
+
+        /**
+         * @param variables The names of the variables, the first one belongs to the highest bit.
+         * @return The cover as expression, using the operators of the {@link TreeBooleanEvaluator}.
+         */
+        public String toExpression(List<String> variables) {
+            String outer = productOfSums ? " AND " : " OR ";
+            String inner = productOfSums ? " OR " : " AND ";
+            if (masks.length == 0) return productOfSums ? "1" : "0";
+
+            Integer[] order = new Integer[masks.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, Comparator.<Integer>comparingInt(i -> Long.bitCount(masks[i])).thenComparing(this::compareTerms));
+
+            List<String> terms = new ArrayList<>();
+            for (int i : order) {
+                if (masks[i] == 0) return productOfSums ? "0" : "1";
+                List<String> literals = new ArrayList<>();
+                for (int v = 0; v < variableCount; v++) {
+                    int bit = variableCount - 1 - v;
+                    if (((masks[i] >>> bit) & 1L) == 0) continue;
+                    // the sums of a product of sums are the negated products of the complement
+                    boolean positive = (((values[i] >>> bit) & 1L) != 0) != productOfSums;
+                    literals.add(positive ? variables.get(v) : "!" + variables.get(v));
+                }
+                String term = String.join(inner, literals);
+                terms.add(literals.size() > 1 && masks.length > 1 ? "(" + term + ")" : term);
+            }
+            return String.join(outer, terms);
+        }
+
+        /**
+         * Orders terms by their variables, starting with the first variable. Terms containing a variable come before
+         * those that do not, positive literals before negated ones.
+         */
+        private int compareTerms(int term1, int term2) {
+            for (int bit = variableCount - 1; bit >= 0; bit--) {
+                int rank1 = getLiteralRank(term1, bit), rank2 = getLiteralRank(term2, bit);
+                if (rank1 != rank2) return Integer.compare(rank1, rank2);
+            }
+            return 0;
+        }
+
+        private int getLiteralRank(int term, int bit) {
+            if (((masks[term] >>> bit) & 1L) == 0) return 2;
+            return (((values[term] >>> bit) & 1L) != 0) != productOfSums ? 0 : 1;
+        }
+    }
+}
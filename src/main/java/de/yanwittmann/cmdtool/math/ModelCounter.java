@@ -0,0 +1,68 @@
+package de.yanwittmann.cmdtool.math;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Counts the rows of the truth table of an expression that evaluate to true, without generating the table.<br>
+ * Small expressions are counted by evaluating all rows bit-parallel. Larger ones are counted on a
+ * {@link BinaryDecisionDiagram}, which usually stays far smaller than the table. If the diagram grows too large, the
+ * rows are evaluated after all, as long as there are few enough variables to do so.
+ */
+public abstract class ModelCounter {
+
+    public final static int MAX_TRUTH_TABLE_VARIABLES = 24;
+    public final static int MAX_DIAGRAM_NODES = 1 << 22;
+
+    public static Result count(String expression, int threads) {
+        List<String> variables = ExpressionEvaluation.extractVariables(expression);
+        BooleanExpression compiled = BooleanExpressionCompiler.compile(expression, variables);
+
+        if (variables.size() > MAX_TRUTH_TABLE_VARIABLES) {
+            try {
+                BinaryDecisionDiagram diagram = BinaryDecisionDiagram.forExpression(compiled, variables.size(), MAX_DIAGRAM_NODES);
+                int root = diagram.build(compiled);
+                return new Result(variables, diagram.getModelCount(root), "decision diagram with " + diagram.getNodeCount(root) + " nodes");
+            } catch (IllegalArgumentException e) {
+                if (variables.size() > BitParallelTruthTable.MAX_VARIABLES) throw e;
+            }
+        }
+
+        long count = new BitParallelTruthTable(ExpressionEvaluation.compileForRows(compiled, variables.size()), variables.size()).countTrueRows(threads);
+        return new Result(variables, BigInteger.valueOf(count), "truth table");
+    }
+
+    public static class Result {
+        private final List<String> variables;
+        private final BigInteger count;
+        private final String method;
+
+        public Result(List<String> variables, BigInteger count, String method) {
+            this.variables = variables;
+            this.count = count;
+            this.method = method;
+        }
+
+        public List<String> getVariables() {
+            return variables;
+        }
+
+        /**
+         * @return The amount of assignments of the variables that make the expression true.
+         */
+        public BigInteger getCount() {
+            return count;
+        }
+
+        public BigInteger getRowCount() {
+            return BigInteger.ONE.shiftLeft(variables.size());
+        }
+
+        /**
+         * @return A description of how the rows have been counted.
+         */
+        public String getMethod() {
+            return method;
+        }
+    }
+}
@@ -2,18 +2,38 @@ package de.yanwittmann.cmdtool.math;
 
 import com.fathzer.soft.javaluator.StaticVariableSet;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+/**
+ * The variables for the {@link TreeBooleanEvaluator}. If the steps are traced, every evaluated sub-expression is
+ * recorded in the sequence stack together with its result. Otherwise, no strings are created for the sub-expressions.
+ */
 public class MyEvaluatorContext<T> extends StaticVariableSet<T> {
 
-    private final Map<String, Boolean> sequenceStack = new LinkedHashMap<>();
+    private final Map<String, Boolean> sequenceStack;
+
+    public MyEvaluatorContext() {
+        this(false);
+    }
+
+    public MyEvaluatorContext(boolean traceSteps) {
+        this.sequenceStack = traceSteps ? new LinkedHashMap<>() : null;
+    }
+
+    public boolean isTracingSteps() {
+        return sequenceStack != null;
+    }
 
     public void addToSequenceStack(String expression, Boolean result) {
-        sequenceStack.put(expression, result);
+        if (sequenceStack != null) sequenceStack.put(expression, result);
     }
 
+    /**
+     * @return The evaluated sub-expressions in the order of their evaluation, empty if the steps are not traced.
+     */
     public Map<String, Boolean> getSequenceStack() {
-        return sequenceStack;
+        return sequenceStack != null ? sequenceStack : Collections.emptyMap();
     }
 }
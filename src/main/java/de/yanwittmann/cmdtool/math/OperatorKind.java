@@ -0,0 +1,37 @@
+package de.yanwittmann.cmdtool.math;
+
+/**
+ * The boolean functions behind the operator symbols of the {@link TreeBooleanEvaluator}. Every operator is mapped to
+ * its kind once using {@link TreeBooleanEvaluator#getOperatorKind(com.fathzer.soft.javaluator.Operator)}, so that
+ * the evaluators can dispatch on the kind instead of searching the operator lists for every node.
+ */
+public enum OperatorKind {
+    NOT, AND, OR, NAND, NOR, XOR, IMPL, EQUI;
+
+    /**
+     * @param o1 The first operand, or the only operand of {@link #NOT}.
+     * @param o2 The second operand, ignored by {@link #NOT}.
+     * @return The result of the operator.
+     */
+    public boolean apply(boolean o1, boolean o2) {
+        switch (this) {
+            case NOT:
+                return !o1;
+            case AND:
+                return o1 && o2;
+            case OR:
+                return o1 || o2;
+            case NAND:
+                return !(o1 && o2);
+            case NOR:
+                return !(o1 || o2);
+            case XOR:
+                return o1 != o2;
+            case IMPL:
+                return !o1 || o2;
+            case EQUI:
+                return o1 == o2;
+        }
+        throw new IllegalStateException("Unknown operator kind: " + this);
+    }
+}
@@ -0,0 +1,445 @@
+package de.yanwittmann.cmdtool.math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A conflict-driven clause-learning (CDCL) SAT solver for formulas in conjunctive normal form.<br>
+ * Clauses are added using DIMACS style literals: variable <code>v</code> (starting at 1) is passed as <code>v</code>
+ * for the positive and <code>-v</code> for the negative literal.<br>
+ * The solver uses two watched literals per clause for unit propagation, learns a clause from every conflict using
+ * the first unique implication point, picks decision variables using VSIDS activities with phase saving and
+ * restarts following the Luby sequence.
+ */
+public class SatSolver {
+
+    private final static int VALUE_UNASSIGNED = 0;
+    private final static int VALUE_TRUE = 1;
+    private final static int VALUE_FALSE = -1;
+
+    private final static int RESTART_BASE_CONFLICTS = 100;
+    private final static double ACTIVITY_DECAY = 0.95;
+    private final static double ACTIVITY_RESCALE_LIMIT = 1e100;
+
+    private final int variableCount;
+    private final List<int[]> clauses = new ArrayList<>();
+    private final IntList[] watches;
+
+    private final int[] values;
+    private final int[] levels;
+    private final int[] reasons;
+    private final boolean[] phases;
+    private final boolean[] seen;
+
+    private final int[] trail;
+    private int trailSize = 0;
+    private int propagationHead = 0;
+    private final IntList trailLimits = new IntList();
+
+    private final double[] activities;
+    private double activityIncrement = 1;
+    private final VariableHeap decisionHeap;
+
+    private boolean unsatisfiable = false;
+    private long conflictCount = 0;
+    private long decisionCount = 0;
+
+    public SatSolver(int variableCount) {
+        this.variableCount = variableCount;
+        this.watches = new IntList[variableCount * 2];
+        for (int i = 0; i < watches.length; i++) watches[i] = new IntList();
+        this.values = new int[variableCount];
+        this.levels = new int[variableCount];
+        this.reasons = new int[variableCount];
+        this.phases = new boolean[variableCount];
+        this.seen = new boolean[variableCount];
+        this.trail = new int[variableCount];
+        this.activities = new double[variableCount];
+        this.decisionHeap = new VariableHeap(variableCount);
+        for (int v = 0; v < variableCount; v++) decisionHeap.insert(v);
+    }
+
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    public int getClauseCount() {
+        return clauses.size();
+    }
+
+    public long getConflictCount() {
+        return conflictCount;
+    }
+
+    public long getDecisionCount() {
+        return decisionCount;
+    }
+
+    /**
+     * Adds a clause to the formula. Clauses can only be added before calling {@link #solve()}.
+     *
+     * @param dimacsLiterals The literals of the clause.
+     * @return <code>false</code> if the formula is known to be unsatisfiable after adding the clause.
+     */
+    public boolean addClause(int... dimacsLiterals) {
+        if (unsatisfiable) return false;
+
+        int[] literals = new int[dimacsLiterals.length];
+        int size = 0;
+        for (int dimacsLiteral : dimacsLiterals) {
+            int variable = Math.abs(dimacsLiteral) - 1;
+            if (dimacsLiteral == 0 || variable >= variableCount)
+                throw new IllegalArgumentException("Invalid literal " + dimacsLiteral + " for " + variableCount + " variables");
+            int literal = variable * 2 + (dimacsLiteral < 0 ? 1 : 0);
+
+            int value = valueOf(literal);
+            if (value == VALUE_TRUE) return true;
+            if (value == VALUE_FALSE) continue;
+
+            boolean duplicate = false;
+            for (int i = 0; i < size; i++) {
+                if (literals[i] == (literal ^ 1)) return true;
+                if (literals[i] == literal) duplicate = true;
+            }
+            if (!duplicate) literals[size++] = literal;
+        }
+
+        if (size == 0) {
+            unsatisfiable = true;
+            return false;
+        } else if (size == 1) {
+            assign(literals[0], -1);
+        } else {
+            attachClause(Arrays.copyOf(literals, size));
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if there is an assignment that satisfies all clauses.
+     */
+    public boolean solve() {
+        if (unsatisfiable) return false;
+
+        int restartCount = 0;
+        long conflictsUntilRestart = luby(restartCount) * RESTART_BASE_CONFLICTS;
+        while (true) {
+            int conflict = propagate();
+            if (conflict != -1) {
+                conflictCount++;
+                if (getDecisionLevel() == 0) {
+                    unsatisfiable = true;
+                    return false;
+                }
+
+                int[] learnt = analyze(conflict);
+                cancelUntil(getBacktrackLevel(learnt));
+                if (learnt.length == 1) assign(learnt[0], -1);
+                else assign(learnt[0], attachClause(learnt));
+                activityIncrement /= ACTIVITY_DECAY;
+
+                if (--conflictsUntilRestart <= 0) {
+                    restartCount++;
+                    conflictsUntilRestart = luby(restartCount) * RESTART_BASE_CONFLICTS;
+                    cancelUntil(0);
+                }
+            } else {
+                int variable = pickBranchVariable();
+                if (variable == -1) return true;
+                decisionCount++;
+                trailLimits.add(trailSize);
+                assign(variable * 2 + (phases[variable] ? 0 : 1), -1);
+            }
+        }
+    }
+
+    /**
+     * @param dimacsVariable The variable, starting at 1.
+     * @return The value of the variable in the satisfying assignment found by the last call of {@link #solve()}.
+     */
+    public boolean getValue(int dimacsVariable) {
+        return values[dimacsVariable - 1] == VALUE_TRUE;
+    }
+
+    private int attachClause(int[] literals) {
+        int index = clauses.size();
+        clauses.add(literals);
+        watches[literals[0]].add(index);
+        watches[literals[1]].add(index);
+        return index;
+    }
+
+    private int valueOf(int literal) {
+        int value = values[literal >> 1];
+        return (literal & 1) == 0 ? value : -value;
+    }
+
+    private void assign(int literal, int reason) {
+        int variable = literal >> 1;
+        values[variable] = (literal & 1) == 0 ? VALUE_TRUE : VALUE_FALSE;
+        levels[variable] = getDecisionLevel();
+        reasons[variable] = reason;
+        trail[trailSize++] = literal;
+    }
+
+    private int getDecisionLevel() {
+        return trailLimits.size();
+    }
+
+    /**
+     * Propagates all assignments on the trail that have not been propagated yet.
+     *
+     * @return The index of a conflicting clause, or <code>-1</code> if there is no conflict.
+     */
+    private int propagate() {
+        while (propagationHead < trailSize) {
+            int falseLiteral = trail[propagationHead++] ^ 1;
+            IntList watchList = watches[falseLiteral];
+            int i = 0, j = 0;
+            while (i < watchList.size) {
+                int clauseIndex = watchList.data[i++];
+                int[] clause = clauses.get(clauseIndex);
+                if (clause[0] == falseLiteral) {
+                    clause[0] = clause[1];
+                    clause[1] = falseLiteral;
+                }
+                if (valueOf(clause[0]) == VALUE_TRUE) {
+                    watchList.data[j++] = clauseIndex;
+                    continue;
+                }
+
+                boolean foundWatch = false;
+                for (int k = 2; k < clause.length; k++) {
+                    if (valueOf(clause[k]) != VALUE_FALSE) {
+                        clause[1] = clause[k];
+                        clause[k] = falseLiteral;
+                        watches[clause[1]].add(clauseIndex);
+                        foundWatch = true;
+                        break;
+                    }
+                }
+                if (foundWatch) continue;
+
+                watchList.data[j++] = clauseIndex;
+                if (valueOf(clause[0]) == VALUE_FALSE) {
+                    while (i < watchList.size) watchList.data[j++] = watchList.data[i++];
+                    watchList.size = j;
+                    propagationHead = trailSize;
+                    return clauseIndex;
+                }
+                assign(clause[0], clauseIndex);
+            }
+            watchList.size = j;
+        }
+        return -1;
+    }
+
+    /**
+     * Learns a clause from the conflict by resolving the conflicting clause with the reasons of the literals that
+     * have been assigned on the current decision level, until only one of them (the first UIP) is left.
+     *
+     * @param conflict The index of the conflicting clause.
+     * @return The learnt clause, the first literal is the one that will be asserted after backtracking.
+     */
+    private int[] analyze(int conflict) {
+        IntList learnt = new IntList();
+        learnt.add(-1);
+
+        int pathCount = 0;
+        int literal = -1;
+        int trailIndex = trailSize - 1;
+        int clauseIndex = conflict;
+        do {
+            int[] clause = clauses.get(clauseIndex);
+            for (int k = literal == -1 ? 0 : 1; k < clause.length; k++) {
+                int variable = clause[k] >> 1;
+                if (!seen[variable] && levels[variable] > 0) {
+                    seen[variable] = true;
+                    bumpActivity(variable);
+                    if (levels[variable] >= getDecisionLevel()) pathCount++;
+                    else learnt.add(clause[k]);
+                }
+            }
+            while (!seen[trail[trailIndex] >> 1]) trailIndex--;
+            literal = trail[trailIndex--];
+            clauseIndex = reasons[literal >> 1];
+            seen[literal >> 1] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        learnt.data[0] = literal ^ 1;
+
+        // remove literals that are implied by the other literals of the learnt clause
+        int[] candidates = Arrays.copyOf(learnt.data, learnt.size);
+        int size = 1;
+        for (int i = 1; i < learnt.size; i++) {
+            int reason = reasons[learnt.data[i] >> 1];
+            boolean redundant = reason != -1;
+            if (redundant) {
+                int[] reasonClause = clauses.get(reason);
+                for (int k = 1; k < reasonClause.length && redundant; k++) {
+                    int variable = reasonClause[k] >> 1;
+                    redundant = seen[variable] || levels[variable] == 0;
+                }
+            }
+            if (!redundant) learnt.data[size++] = learnt.data[i];
+        }
+
+        for (int i = 1; i < candidates.length; i++) seen[candidates[i] >> 1] = false;
+        return Arrays.copyOf(learnt.data, size);
+    }
+
+    /**
+     * Moves the literal with the highest decision level (apart from the asserting one) to the second position, so
+     * that it is watched together with the asserting literal.
+     *
+     * @param learnt The learnt clause.
+     * @return The level to backtrack to.
+     */
+    private int getBacktrackLevel(int[] learnt) {
+        if (learnt.length == 1) return 0;
+        int maxIndex = 1;
+        for (int i = 2; i < learnt.length; i++)
+            if (levels[learnt[i] >> 1] > levels[learnt[maxIndex] >> 1]) maxIndex = i;
+        int swap = learnt[1];
+        learnt[1] = learnt[maxIndex];
+        learnt[maxIndex] = swap;
+        return levels[learnt[1] >> 1];
+    }
+
+    private void cancelUntil(int level) {
+        if (getDecisionLevel() <= level) return;
+        int limit = trailLimits.data[level];
+        for (int i = trailSize - 1; i >= limit; i--) {
+            int variable = trail[i] >> 1;
+            phases[variable] = values[variable] == VALUE_TRUE;
+            values[variable] = VALUE_UNASSIGNED;
+            if (!decisionHeap.contains(variable)) decisionHeap.insert(variable);
+        }
+        trailSize = limit;
+        propagationHead = limit;
+        trailLimits.size = level;
+    }
+
+    private int pickBranchVariable() {
+        while (decisionHeap.size() > 0) {
+            int variable = decisionHeap.removeMax();
+            if (values[variable] == VALUE_UNASSIGNED) return variable;
+        }
+        return -1;
+    }
+
+    private void bumpActivity(int variable) {
+        activities[variable] += activityIncrement;
+        if (activities[variable] > ACTIVITY_RESCALE_LIMIT) {
+            for (int v = 0; v < variableCount; v++) activities[v] /= ACTIVITY_RESCALE_LIMIT;
+            activityIncrement /= ACTIVITY_RESCALE_LIMIT;
+        }
+        if (decisionHeap.contains(variable)) decisionHeap.increase(variable);
+    }
+
+    /**
+     * @param i The index in the sequence, starting at 0.
+     * @return The i-th element of the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, ...
+     */
+    private static long luby(int i) {
+        int size = 1, sequence = 0;
+        while (size < i + 1) {
+            sequence++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) >> 1;
+            sequence--;
+            i = i % size;
+        }
+        return 1L << sequence;
+    }
+
+    private static class IntList {
+        private int[] data = new int[4];
+        private int size = 0;
+
+        private void add(int value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+
+        private int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A binary max-heap of variables, ordered by their activity.
+     */
+    private class VariableHeap {
+        private final int[] heap;
+        private final int[] positions;
+        private int size = 0;
+
+        private VariableHeap(int variableCount) {
+            this.heap = new int[variableCount];
+            this.positions = new int[variableCount];
+            Arrays.fill(positions, -1);
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private boolean contains(int variable) {
+            return positions[variable] != -1;
+        }
+
+        private void insert(int variable) {
+            heap[size] = variable;
+            positions[variable] = size;
+            siftUp(size++);
+        }
+
+        private void increase(int variable) {
+            siftUp(positions[variable]);
+        }
+
+        private int removeMax() {
+            int max = heap[0];
+            positions[max] = -1;
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                positions[heap[0]] = 0;
+                siftDown(0);
+            }
+            return max;
+        }
+
+        private void siftUp(int index) {
+            int variable = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) >> 1;
+                if (activities[heap[parent]] >= activities[variable]) break;
+                heap[index] = heap[parent];
+                positions[heap[index]] = index;
+                index = parent;
+            }
+            heap[index] = variable;
+            positions[variable] = index;
+        }
+
+        private void siftDown(int index) {
+            int variable = heap[index];
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) break;
+                if (child + 1 < size && activities[heap[child + 1]] > activities[heap[child]]) child++;
+                if (activities[heap[child]] <= activities[variable]) break;
+                heap[index] = heap[child];
+                positions[heap[index]] = index;
+                index = child;
+            }
+            heap[index] = variable;
+            positions[variable] = index;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package de.yanwittmann.cmdtool.math;
+
+import java.util.List;
+
+/**
+ * Decides satisfiability and tautology of expressions using the {@link SatSolver} on the {@link TseitinEncoder Tseitin
+ * encoding} of the expression. This does not enumerate the truth table, so it can be used on expressions with far more
+ * variables than the truth table based methods.
+ */
+public abstract class SatisfiabilityChecker {
+
+    /**
+     * @param expression The expression to check.
+     * @return A result that is successful if there is an assignment that makes the expression true. The assignment is
+     * stored in the result.
+     */
+    public static Result checkSatisfiable(String expression) {
+        List<String> variables = ExpressionEvaluation.extractVariables(expression);
+        BooleanExpression compiled = BooleanExpressionCompiler.compile(expression, variables);
+        return solve(variables, compiled);
+    }
+
+    /**
+     * An expression is a tautology if its negation is not satisfiable.
+     *
+     * @param expression The expression to check.
+     * @return A result that is successful if the expression is a tautology. Otherwise, the assignment that makes the
+     * expression false is stored in the result.
+     */
+    public static Result checkTautology(String expression) {
+        List<String> variables = ExpressionEvaluation.extractVariables(expression);
+        BooleanExpression compiled = BooleanExpressionCompiler.compile(expression, variables);
+        Result negation = solve(variables, new BooleanExpression.Not(compiled));
+        return new Result(variables, !negation.isSuccessful(), negation.assignment, negation.variableCount, negation.clauseCount);
+    }
+
+    private static Result solve(List<String> variables, BooleanExpression expression) {
+        TseitinEncoder encoder = new TseitinEncoder(variables.size());
+        encoder.assertTrue(expression);
+        SatSolver solver = encoder.createSolver();
+
+        if (!solver.solve()) return new Result(variables, false, null, encoder.getVariableCount(), encoder.getClauseCount());
+
+        // the compiler assigns the first variable to the highest bit
+        boolean[] assignment = new boolean[variables.size()];
+        for (int i = 0; i < variables.size(); i++)
+            assignment[i] = solver.getValue(variables.size() - i);
+        return new Result(variables, true, assignment, encoder.getVariableCount(), encoder.getClauseCount());
+    }
+
+    public static class Result {
+        private final List<String> variables;
+        private final boolean successful;
+        private final boolean[] assignment;
+        private final int variableCount;
+        private final int clauseCount;
+
+        public Result(List<String> variables, boolean successful, boolean[] assignment, int variableCount, int clauseCount) {
+            this.variables = variables;
+            this.successful = successful;
+            this.assignment = assignment;
+            this.variableCount = variableCount;
+            this.clauseCount = clauseCount;
+        }
+
+        public List<String> getVariables() {
+            return variables;
+        }
+
+        public boolean isSuccessful() {
+            return successful;
+        }
+
+        /**
+         * @return The satisfying assignment or counterexample in the order of the variables, <code>null</code> if
+         * there is none.
+         */
+        public boolean[] getAssignment() {
+            return assignment;
+        }
+
+        public int getVariableCount() {
+            return variableCount;
+        }
+
+        public int getClauseCount() {
+            return clauseCount;
+        }
+
+        public String formatAssignment() {
+            return SatisfiabilityChecker.formatAssignment(variables, assignment);
+        }
+    }
+
+    public static String formatAssignment(List<String> variables, boolean[] assignment) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < variables.size(); i++) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(variables.get(i)).append(" = ").append(assignment[i] ? 1 : 0);
+        }
+        return sb.toString();
+    }
+}
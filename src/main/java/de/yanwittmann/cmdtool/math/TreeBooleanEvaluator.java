@@ -83,6 +83,29 @@ public class TreeBooleanEvaluator extends AbstractEvaluator<String> {
         PARAMETERS.addExpressionBracket(BracketPair.PARENTHESES);
     }
 
+    private static final Map<Operator, OperatorKind> OPERATOR_KINDS = new IdentityHashMap<>();
+
+    static {
+        NOT_OPERATORS.forEach(operator -> OPERATOR_KINDS.put(operator, OperatorKind.NOT));
+        AND_OPERATORS.forEach(operator -> OPERATOR_KINDS.put(operator, OperatorKind.AND));
+        OR_OPERATORS.forEach(operator -> OPERATOR_KINDS.put(operator, OperatorKind.OR));
+        NAND_OPERATORS.forEach(operator -> OPERATOR_KINDS.put(operator, OperatorKind.NAND));
+        NOR_OPERATORS.forEach(operator -> OPERATOR_KINDS.put(operator, OperatorKind.NOR));
+        XOR_OPERATORS.forEach(operator -> OPERATOR_KINDS.put(operator, OperatorKind.XOR));
+        IMPL_OPERATORS.forEach(operator -> OPERATOR_KINDS.put(operator, OperatorKind.IMPL));
+        EQUI_OPERATORS.forEach(operator -> OPERATOR_KINDS.put(operator, OperatorKind.EQUI));
+    }
+
+    private static final ExpressionLexer LEXER;
+
+    static {
+        List<String> symbols = new ArrayList<>();
+        PARAMETERS.getOperators().forEach(operator -> symbols.add(operator.getSymbol()));
+        symbols.add(BracketPair.PARENTHESES.getOpen());
+        symbols.add(BracketPair.PARENTHESES.getClose());
+        LEXER = new ExpressionLexer(symbols, Arrays.asList("1", "0", "TRUE", "FALSE", "TT", "FF", "true", "false", "tt", "ff"));
+    }
+
     public TreeBooleanEvaluator() {
         super(PARAMETERS);
     }
@@ -92,71 +115,45 @@ public class TreeBooleanEvaluator extends AbstractEvaluator<String> {
         return literal;
     }
 
-    private static boolean getValue(String literal) {
+    static boolean getValue(String literal) {
         if (literal != null && literal.length() > 0) {
-            String lowercase = literal.toLowerCase();
-            if ("t".equals(lowercase) || "tt".equals(lowercase) || "true".equals(lowercase) || "1".equals(lowercase) || lowercase.endsWith("=true"))
+            if ("t".equalsIgnoreCase(literal) || "tt".equalsIgnoreCase(literal) || "true".equalsIgnoreCase(literal) || "1".equals(literal) || endsWithIgnoreCase(literal, "=true"))
                 return true;
-            else if ("f".equals(lowercase) || "ff".equals(lowercase) || "false".equals(lowercase) || "0".equals(lowercase) || lowercase.endsWith("=false"))
+            else if ("f".equalsIgnoreCase(literal) || "ff".equalsIgnoreCase(literal) || "false".equalsIgnoreCase(literal) || "0".equals(literal) || endsWithIgnoreCase(literal, "=false"))
                 return false;
         }
         throw new IllegalArgumentException("Unknown literal: " + literal);
     }
 
+    private static boolean endsWithIgnoreCase(String literal, String suffix) {
+        return literal.regionMatches(true, literal.length() - suffix.length(), suffix, 0, suffix.length());
+    }
+
     @Override
     protected Iterator<String> tokenize(String expression) {
-        return super.tokenize(expression);
+        return LEXER.tokenize(expression).getTokens().iterator();
     }
 
     @Override
     protected String evaluate(Operator operator, Iterator<String> operands, Object evaluationContext) {
+        OperatorKind kind = getOperatorKind(operator);
+        String o1 = operands.next();
+        if (!(evaluationContext instanceof MyEvaluatorContext) || !((MyEvaluatorContext<?>) evaluationContext).isTracingSteps()) {
+            boolean result = kind.apply(getValue(o1), kind != OperatorKind.NOT && getValue(operands.next()));
+            return result ? "true" : "false";
+        }
+
         boolean result;
         String eval;
-        if (OR_OPERATORS.contains(operator)) {
-            String o1 = operands.next();
-            String o2 = operands.next();
-            result = getValue(o1) || getValue(o2);
-            eval = "(" + o1 + " " + operator.getSymbol() + " " + o2 + ")=" + result;
-        } else if (AND_OPERATORS.contains(operator)) {
-            String o1 = operands.next();
-            String o2 = operands.next();
-            result = getValue(o1) && getValue(o2);
-            eval = "(" + o1 + " " + operator.getSymbol() + " " + o2 + ")=" + result;
-        } else if (IMPL_OPERATORS.contains(operator)) {
-            String o1 = operands.next();
-            String o2 = operands.next();
-            result = !getValue(o1) || getValue(o2);
-            eval = "(" + o1 + " " + operator.getSymbol() + " " + o2 + ")=" + result;
-        } else if (EQUI_OPERATORS.contains(operator)) {
-            String o1 = operands.next();
-            String o2 = operands.next();
-            result = getValue(o1) == getValue(o2);
-            eval = "(" + o1 + " " + operator.getSymbol() + " " + o2 + ")=" + result;
-        } else if (NOT_OPERATORS.contains(operator)) {
-            String o1 = operands.next();
+        if (kind == OperatorKind.NOT) {
             result = !getValue(o1);
             eval = "(" + operator.getSymbol() + (operator.getSymbol().equals("!") ? " " : "") + o1 + ")=" + result;
-        } else if (NAND_OPERATORS.contains(operator)) {
-            String o1 = operands.next();
-            String o2 = operands.next();
-            result = !(getValue(o1) && getValue(o2));
-            eval = "(" + o1 + " " + operator.getSymbol() + " " + o2 + ")=" + result;
-        } else if (NOR_OPERATORS.contains(operator)) {
-            String o1 = operands.next();
-            String o2 = operands.next();
-            result = !(getValue(o1) || getValue(o2));
-            eval = "(" + o1 + " " + operator.getSymbol() + " " + o2 + ")=" + result;
-        } else if (XOR_OPERATORS.contains(operator)) {
-            String o1 = operands.next();
+        } else {
             String o2 = operands.next();
-            boolean v1 = getValue(o1), v2 = getValue(o2);
-            result = (v1 && !v2) || (!v1 && v2);
+            result = kind.apply(getValue(o1), getValue(o2));
             eval = "(" + o1 + " " + operator.getSymbol() + " " + o2 + ")=" + result;
-        } else {
-            throw new IllegalArgumentException("Invalid operator: " + operator.getSymbol());
         }
-        if (evaluationContext instanceof MyEvaluatorContext)
-            ((MyEvaluatorContext<?>) evaluationContext).addToSequenceStack(eval.replace("=true", "").replace("=false", ""), result);
+        ((MyEvaluatorContext<?>) evaluationContext).addToSequenceStack(eval.replace("=true", "").replace("=false", ""), result);
         return eval;
     }
 
@@ -167,4 +164,21 @@ public class TreeBooleanEvaluator extends AbstractEvaluator<String> {
     public static Parameters getPARAMETERS() {
         return PARAMETERS;
     }
+
+    /**
+     * @return The kind of one of the operators of this evaluator.
+     * @throws IllegalArgumentException If the operator does not belong to this evaluator.
+     */
+    public static OperatorKind getOperatorKind(Operator operator) {
+        OperatorKind kind = OPERATOR_KINDS.get(operator);
+        if (kind == null) throw new IllegalArgumentException("Invalid operator: " + operator.getSymbol());
+        return kind;
+    }
+
+    /**
+     * @return The lexer for the operators of this evaluator, shared by all classes that parse boolean expressions.
+     */
+    public static ExpressionLexer getLexer() {
+        return LEXER;
+    }
 }
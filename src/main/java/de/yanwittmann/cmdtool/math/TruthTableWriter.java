@@ -0,0 +1,200 @@
+package de.yanwittmann.cmdtool.math;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Writes a truth table row by row in the same layout as {@link de.yanwittmann.cmdtool.util.Util#formatAsTable(List, boolean, boolean)}.<br>
+ * Since every cell of a truth table is a single character, the width of every column is known from the header and
+ * the rows can be written as soon as they have been evaluated, without keeping the table in memory.<br>
+ * Using {@link #writeWords(long, int, WordWriter)}, the rows can also be evaluated and formatted on multiple threads.
+ * If the table is written to an {@link OutputStream}, the threads also encode the rows, which otherwise takes most of
+ * the time of writing the table.
+ */
+public class TruthTableWriter {
+
+    /**
+     * The amount of characters every thread formats at once, the amount of rows per chunk depends on the row length.
+     */
+    private final static int CHUNK_CHARACTERS = 1 << 18;
+
+    private final Writer writer;
+    private final OutputStream stream;
+    private final Charset charset;
+    private final List<String> header;
+    private final int[] cellOffsets;
+    private final char[] row;
+
+    private TruthTableWriter(Writer writer, TruthTableWriter layout) {
+        this.writer = writer;
+        this.stream = null;
+        this.charset = null;
+        this.header = layout.header;
+        this.cellOffsets = layout.cellOffsets;
+        this.row = layout.row.clone();
+    }
+
+    public TruthTableWriter(Writer writer, List<String> header) {
+        this(writer, null, null, header);
+    }
+
+    /**
+     * Creates a writer that encodes the table using the given charset. The stream is flushed after all rows have been
+     * written by {@link #writeWords(long, int, WordWriter)}.
+     */
+    public TruthTableWriter(OutputStream stream, Charset charset, List<String> header) {
+        this(new BufferedWriter(new OutputStreamWriter(stream, charset)), stream, charset, header);
+    }
+
+    private TruthTableWriter(Writer writer, OutputStream stream, Charset charset, List<String> header) {
+        this.writer = writer;
+        this.stream = stream;
+        this.charset = charset;
+        this.header = header;
+        this.cellOffsets = new int[header.size()];
+
+        int offset = 1;
+        for (int i = 0; i < header.size(); i++) {
+            if (i > 0) offset += 3;
+            cellOffsets[i] = offset;
+            offset += Math.max(header.get(i).length(), 1);
+        }
+
+        this.row = new char[offset + 1];
+        Arrays.fill(row, ' ');
+        for (int i = 1; i < cellOffsets.length; i++) row[cellOffsets[i] - 2] = '║';
+        row[row.length - 1] = '\n';
+    }
+
+    public void writeHeader() throws IOException {
+        char[] headerLine = new char[row.length];
+        Arrays.fill(headerLine, ' ');
+        for (int i = 0; i < header.size(); i++) {
+            if (i > 0) headerLine[cellOffsets[i] - 2] = '║';
+            header.get(i).getChars(0, header.get(i).length(), headerLine, cellOffsets[i]);
+        }
+        headerLine[headerLine.length - 1] = '\n';
+        writer.write(headerLine);
+
+        char[] separator = new char[row.length + 1];
+        Arrays.fill(separator, '═');
+        for (int i = 1; i < cellOffsets.length; i++) separator[cellOffsets[i] - 2] = '╬';
+        separator[separator.length - 1] = '\n';
+        writer.write(separator);
+    }
+
+    public void setCell(int column, boolean value) {
+        row[cellOffsets[column]] = value ? '1' : '0';
+    }
+
+    /**
+     * Sets the cells of the input columns to the bits of the row index, the first column is the highest bit.
+     *
+     * @param rowIndex      The index of the row in the truth table.
+     * @param variableCount The amount of input columns.
+     */
+    public void setInputCells(long rowIndex, int variableCount) {
+        for (int i = 0; i < variableCount; i++)
+            row[cellOffsets[i]] = ((rowIndex >>> (variableCount - 1 - i)) & 1L) != 0 ? '1' : '0';
+    }
+
+    public void writeRow() throws IOException {
+        writer.write(row);
+    }
+
+    /**
+     * Writes the rows of all words of a truth table, where every word contains 64 rows. The words are split into chunks
+     * that are evaluated and formatted by a {@link ForkJoinPool}, every chunk is written to a separate buffer using a
+     * copy of this writer. The buffers are written in the order of the words, so the output is the same as when
+     * writing the words on a single thread.<br>
+     * Only a few chunks per thread are kept in memory at the same time.
+     *
+     * @param wordCount  The amount of words in the truth table.
+     * @param threads    The amount of threads to use, <code>1</code> writes all words on the calling thread.
+     * @param wordWriter Evaluates and writes the rows of a single word, it is called from multiple threads at once.
+     * @throws IOException If the table cannot be written.
+     */
+    public void writeWords(long wordCount, int threads, WordWriter wordWriter) throws IOException {
+        long chunkWords = Math.max(1, CHUNK_CHARACTERS / ((long) Long.SIZE * row.length));
+        if (threads <= 1 || wordCount <= chunkWords) {
+            long[] words = new long[Long.SIZE];
+            for (long w = 0; w < wordCount; w++) wordWriter.writeWord(w, words, this);
+            if (stream != null) flush();
+            return;
+        }
+
+        if (stream != null) writer.flush();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Deque<ForkJoinTask<Chunk>> pendingChunks = new ArrayDeque<>();
+            long nextWord = 0;
+            while (nextWord < wordCount || !pendingChunks.isEmpty()) {
+                while (nextWord < wordCount && pendingChunks.size() < threads * 2) {
+                    long startWord = nextWord;
+                    long endWord = Math.min(wordCount, startWord + chunkWords);
+                    pendingChunks.add(pool.submit(() -> formatWords(startWord, endWord, wordWriter)));
+                    nextWord = endWord;
+                }
+                pendingChunks.poll().join().writeTo(this);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (stream != null) flush();
+    }
+
+    private Chunk formatWords(long startWord, long endWord, WordWriter wordWriter) {
+        CharArrayWriter buffer = new CharArrayWriter((int) ((endWord - startWord) * Long.SIZE * row.length));
+        TruthTableWriter chunkWriter = new TruthTableWriter(buffer, this);
+        long[] words = new long[Long.SIZE];
+        try {
+            for (long w = startWord; w < endWord; w++) wordWriter.writeWord(w, words, chunkWriter);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (charset == null) return new Chunk(buffer, null);
+        return new Chunk(null, charset.encode(CharBuffer.wrap(buffer.toCharArray())));
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+        if (stream != null) stream.flush();
+    }
+
+    /**
+     * The formatted rows of a chunk of words, encoded if the table is written to a stream.
+     */
+    private static class Chunk {
+        private final CharArrayWriter characters;
+        private final ByteBuffer bytes;
+
+        private Chunk(CharArrayWriter characters, ByteBuffer bytes) {
+            this.characters = characters;
+            this.bytes = bytes;
+        }
+
+        private void writeTo(TruthTableWriter tableWriter) throws IOException {
+            if (characters != null) characters.writeTo(tableWriter.writer);
+            else tableWriter.stream.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        }
+    }
+
+    public interface WordWriter {
+        /**
+         * @param wordIndex   The index of the word, containing the rows <code>wordIndex * 64</code> to
+         *                    <code>wordIndex * 64 + 63</code>.
+         * @param words       A buffer for the variable words that belongs to the calling thread.
+         * @param tableWriter The writer to write the rows of the word to.
+         * @throws IOException If the rows cannot be written.
+         */
+        void writeWord(long wordIndex, long[] words, TruthTableWriter tableWriter) throws IOException;
+    }
+}
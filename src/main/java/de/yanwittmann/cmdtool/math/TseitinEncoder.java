@@ -0,0 +1,188 @@
+package de.yanwittmann.cmdtool.math;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts {@link BooleanExpression} trees into an equisatisfiable formula in conjunctive normal form, by introducing
+ * an auxiliary variable for every operator node. In contrast to distributing the operators, the amount of clauses
+ * only grows linearly with the size of the expression. Chains of the same operator are combined into a single node
+ * and expressions that are asserted using {@link #assertTrue(BooleanExpression)} are split into clauses directly.<br>
+ * Input variables keep their index: a variable with bit <code>b</code> is encoded as DIMACS variable <code>b + 1</code>.
+ */
+public class TseitinEncoder {
+
+    private final List<int[]> clauses = new ArrayList<>();
+    private final int inputVariableCount;
+    private int variableCount;
+    private int trueVariable = 0;
+
+    public TseitinEncoder(int inputVariableCount) {
+        this.inputVariableCount = inputVariableCount;
+        this.variableCount = inputVariableCount;
+    }
+
+    public int getInputVariableCount() {
+        return inputVariableCount;
+    }
+
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    public int getClauseCount() {
+        return clauses.size();
+    }
+
+    public void addClause(int... literals) {
+        clauses.add(literals);
+    }
+
+    /**
+     * Adds clauses that are satisfied exactly when the expression is true. Conjunctions are split into separate
+     * assertions and disjunctions become a single clause, only the remaining operators need auxiliary variables.
+     *
+     * @param expression The expression to assert.
+     */
+    public void assertTrue(BooleanExpression expression) {
+        List<BooleanExpression> stack = new ArrayList<>();
+        stack.add(expression);
+        while (!stack.isEmpty()) {
+            BooleanExpression current = stack.remove(stack.size() - 1);
+            BooleanExpression negated = current instanceof BooleanExpression.Not ? ((BooleanExpression.Not) current).getOperand() : null;
+            if (current instanceof BooleanExpression.And) {
+                stack.add(((BooleanExpression.And) current).getRight());
+                stack.add(((BooleanExpression.And) current).getLeft());
+            } else if (current instanceof BooleanExpression.Nor || negated instanceof BooleanExpression.Or) {
+                BooleanExpression.Binary or = (BooleanExpression.Binary) (negated == null ? current : negated);
+                stack.add(new BooleanExpression.Not(or.getRight()));
+                stack.add(new BooleanExpression.Not(or.getLeft()));
+            } else if (negated instanceof BooleanExpression.Impl) {
+                stack.add(new BooleanExpression.Not(((BooleanExpression.Impl) negated).getRight()));
+                stack.add(((BooleanExpression.Impl) negated).getLeft());
+            } else if (negated instanceof BooleanExpression.Not) {
+                stack.add(((BooleanExpression.Not) negated).getOperand());
+            } else if (current instanceof BooleanExpression.Or || current instanceof BooleanExpression.Impl) {
+                List<BooleanExpression> operands = new ArrayList<>();
+                collectOperands(current, BooleanExpression.Or.class, operands);
+                int[] clause = new int[operands.size()];
+                for (int i = 0; i < clause.length; i++) clause[i] = encode(operands.get(i));
+                addClause(clause);
+            } else {
+                addClause(encode(current));
+            }
+        }
+    }
+
+    /**
+     * Encodes the expression and returns the literal that is true exactly when the expression is true.
+     *
+     * @param expression The expression to encode.
+     * @return The DIMACS literal representing the expression.
+     */
+    public int encode(BooleanExpression expression) {
+        if (expression instanceof BooleanExpression.Var) {
+            int bit = ((BooleanExpression.Var) expression).getBit();
+            if (bit >= inputVariableCount)
+                throw new IllegalArgumentException("Variable " + expression + " is not an input variable of the encoder");
+            return bit + 1;
+        } else if (expression instanceof BooleanExpression.Const) {
+            if (trueVariable == 0) {
+                trueVariable = newVariable();
+                addClause(trueVariable);
+            }
+            return ((BooleanExpression.Const) expression).getValue() ? trueVariable : -trueVariable;
+        } else if (expression instanceof BooleanExpression.Not) {
+            return -encode(((BooleanExpression.Not) expression).getOperand());
+        }
+
+        BooleanExpression.Binary binary = (BooleanExpression.Binary) expression;
+        if (binary instanceof BooleanExpression.And || binary instanceof BooleanExpression.Nand)
+            return binary instanceof BooleanExpression.And ? encodeAnd(binary) : -encodeAnd(binary);
+        else if (binary instanceof BooleanExpression.Or || binary instanceof BooleanExpression.Nor || binary instanceof BooleanExpression.Impl)
+            return binary instanceof BooleanExpression.Nor ? -encodeOr(binary) : encodeOr(binary);
+
+        int left = encode(binary.getLeft());
+        int right = encode(binary.getRight());
+        if (binary instanceof BooleanExpression.Xor) return encodeXor(left, right);
+        else if (binary instanceof BooleanExpression.Equi) return -encodeXor(left, right);
+        throw new IllegalArgumentException("Unknown expression node: " + expression.getClass().getSimpleName());
+    }
+
+    private int encodeAnd(BooleanExpression.Binary expression) {
+        List<BooleanExpression> operands = new ArrayList<>();
+        collectOperands(expression.getLeft(), BooleanExpression.And.class, operands);
+        collectOperands(expression.getRight(), BooleanExpression.And.class, operands);
+        int gate = newVariable();
+        int[] clause = new int[operands.size() + 1];
+        clause[0] = gate;
+        for (int i = 0; i < operands.size(); i++) {
+            int operand = encode(operands.get(i));
+            addClause(-gate, operand);
+            clause[i + 1] = -operand;
+        }
+        addClause(clause);
+        return gate;
+    }
+
+    private int encodeOr(BooleanExpression.Binary expression) {
+        List<BooleanExpression> operands = new ArrayList<>();
+        if (expression instanceof BooleanExpression.Impl) {
+            operands.add(new BooleanExpression.Not(expression.getLeft()));
+            collectOperands(expression.getRight(), BooleanExpression.Or.class, operands);
+        } else {
+            collectOperands(expression.getLeft(), BooleanExpression.Or.class, operands);
+            collectOperands(expression.getRight(), BooleanExpression.Or.class, operands);
+        }
+        int gate = newVariable();
+        int[] clause = new int[operands.size() + 1];
+        clause[0] = -gate;
+        for (int i = 0; i < operands.size(); i++) {
+            int operand = encode(operands.get(i));
+            addClause(gate, -operand);
+            clause[i + 1] = operand;
+        }
+        addClause(clause);
+        return gate;
+    }
+
+    /**
+     * Collects the operands of a chain of the given operator, implications are treated as disjunctions.
+     */
+    private static void collectOperands(BooleanExpression expression, Class<? extends BooleanExpression.Binary> operator, List<BooleanExpression> operands) {
+        List<BooleanExpression> stack = new ArrayList<>();
+        stack.add(expression);
+        while (!stack.isEmpty()) {
+            BooleanExpression current = stack.remove(stack.size() - 1);
+            if (operator.isInstance(current)) {
+                stack.add(((BooleanExpression.Binary) current).getRight());
+                stack.add(((BooleanExpression.Binary) current).getLeft());
+            } else if (operator == BooleanExpression.Or.class && current instanceof BooleanExpression.Impl) {
+                stack.add(((BooleanExpression.Binary) current).getRight());
+                stack.add(new BooleanExpression.Not(((BooleanExpression.Binary) current).getLeft()));
+            } else {
+                operands.add(current);
+            }
+        }
+    }
+
+    private int encodeXor(int a, int b) {
+        int gate = newVariable();
+        addClause(-gate, a, b);
+        addClause(-gate, -a, -b);
+        addClause(gate, -a, b);
+        addClause(gate, a, -b);
+        return gate;
+    }
+
+    private int newVariable() {
+        return ++variableCount;
+    }
+
+    public SatSolver createSolver() {
+        SatSolver solver = new SatSolver(variableCount);
+        for (int[] clause : clauses)
+            if (!solver.addClause(clause)) break;
+        return solver;
+    }
+}
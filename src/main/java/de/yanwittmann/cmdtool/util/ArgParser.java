@@ -1,6 +1,8 @@
 package de.yanwittmann.cmdtool.util;
 
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -29,7 +31,10 @@ import java.util.stream.Stream;
 public class ArgParser implements Iterable<ArgParser.Argument> {
 
     private final Set<Argument> arguments = new HashSet<>();
+    private final Map<String, Argument> argumentsByIdentifier = new HashMap<>();
+    private int maxIdentifierLength = 0;
     private String prefix = null;
+    private Pattern prefixPattern = null;
     private boolean prefixRequired = false;
     private boolean failOnDoubleArguments = true;
 
@@ -38,6 +43,7 @@ public class ArgParser implements Iterable<ArgParser.Argument> {
 
     public void setPrefix(String prefix) {
         this.prefix = prefix;
+        this.prefixPattern = prefix != null && prefix.length() > 0 ? Pattern.compile(prefix) : null;
     }
 
     public void setPrefixRequired(boolean prefixRequired) {
@@ -49,33 +55,37 @@ public class ArgParser implements Iterable<ArgParser.Argument> {
     }
 
     public boolean addArgument(Argument argument) {
-        for (Argument checkArg : arguments)
-            for (String identifier : argument.identifiers)
-                if (checkArg.identifiers.contains(identifier))
-                    return false;
-        return arguments.add(argument);
+        for (String identifier : argument.identifiers)
+            if (argumentsByIdentifier.containsKey(identifier))
+                return false;
+        if (!arguments.add(argument)) return false;
+        for (String identifier : argument.identifiers) {
+            argumentsByIdentifier.put(identifier, argument);
+            maxIdentifierLength = Math.max(maxIdentifierLength, identifier.length());
+        }
+        return true;
     }
 
     public boolean removeArgument(Argument argument) {
-        return arguments.remove(argument);
+        if (!arguments.remove(argument)) return false;
+        argumentsByIdentifier.values().removeIf(indexed -> indexed == argument);
+        return true;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public boolean isPrefixRequired() {
+        return prefixRequired;
     }
 
     public boolean matches(String args) {
-        try {
-            parse(args);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        return tryParse(args).isSuccessful();
     }
 
     public boolean matches(String[] args) {
-        try {
-            parse(args);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        return matches(String.join(" ", args));
     }
 
     public Results parse(String[] args) {
@@ -83,84 +93,86 @@ public class ArgParser implements Iterable<ArgParser.Argument> {
     }
 
     public Results parse(String args) {
-        if (prefix != null && prefix.length() > 0) {
-            if (prefixRequired && !args.matches("^" + prefix + ".*"))
-                throw new ArgParserException("Missing prefix '" + prefix + "' for input: " + args);
-            args = args.replaceAll("^" + prefix, "");
-        }
-        return parseInputStringArray(args.trim().split(" "));
+        Results results = tryParse(args);
+        if (!results.isSuccessful()) throw new ArgParserException(results.getError());
+        return results;
+    }
+
+    /**
+     * Parses the args string like {@link #parse(String)}, but instead of throwing an exception if the syntax is
+     * invalid, the returned results contain the error message.
+     *
+     * @param args The args string to parse.
+     * @return The results, check {@link Results#isSuccessful()} before using them.
+     */
+    public Results tryParse(String args) {
+        if (prefixPattern != null) {
+            Matcher prefixMatcher = prefixPattern.matcher(args);
+            if (prefixMatcher.lookingAt()) args = args.substring(prefixMatcher.end());
+            else if (prefixRequired) return Results.failed("Missing prefix '" + prefix + "' for input: " + args);
+        }
+        return parseTokens(args, Token.tokenize(args));
     }
 
-    private Results parseInputStringArray(String[] args) {
-        List<Argument> remainingArguments = new ArrayList<>(arguments);
+    /**
+     * Finds the arguments in a single pass over the tokens, looking up every token in the identifier index. Quoted
+     * tokens are never identifiers. The parameter of an argument is the part of the input between the first and last
+     * token of the parameter, only quoted tokens are copied separately.
+     */
+    private Results parseTokens(String input, List<Token> args) {
+        Set<Argument> foundArguments = Collections.newSetFromMap(new IdentityHashMap<>());
         List<Result> results = new ArrayList<>();
         int currentArgumentIndex = 0;
 
         // find arguments
-        for (int i = 0; i < args.length && remainingArguments.size() > 0; i++) {
-
-            int finalI = i;
-            Argument currentArgument = remainingArguments.stream().filter(arg -> arg.containsIdentifier(args[finalI])).findFirst().orElse(null);
-
-            if (currentArgument != null) {
-                remainingArguments.remove(currentArgument);
-
-                StringBuilder parameterBuilder = new StringBuilder();
-                while (true) {
-                    i++;
-                    if (i < args.length) {
-                        int finalI2 = i;
-                        if (remainingArguments.stream().anyMatch(arg -> arg.containsIdentifier(args[finalI2]))) {
-                            i--;
-                            break;
-                        } else {
-                            if (arguments.stream().filter(arg -> arg.containsIdentifier(args[finalI2])).findFirst().orElse(null) != null) {
-                                if (failOnDoubleArguments) {
-                                    String highlighted = String.join(" ", args);
-                                    for (String identifier : currentArgument.identifiers)
-                                        highlighted = highlightIdentifier(highlighted, identifier);
-                                    throw new ArgParserException("Argument appears twice in args string\n" + currentArgument + "\n" + highlighted);
-                                } else {
-                                    i--;
-                                    break;
-                                }
-                            }
-                        }
-                        if (parameterBuilder.length() > 0) parameterBuilder.append(" ");
-                        parameterBuilder.append(args[finalI2]);
-                    } else break;
+        int i = 0;
+        while (i < args.size() && foundArguments.size() < arguments.size()) {
+            Argument currentArgument = findArgument(input, args.get(i));
+            i++;
+            if (currentArgument == null || !foundArguments.add(currentArgument)) continue;
+
+            // all following tokens up to the next argument are the parameter
+            int parameterStart = i;
+            for (; i < args.size(); i++) {
+                Argument nextArgument = findArgument(input, args.get(i));
+                if (nextArgument != null) {
+                    if (!foundArguments.contains(nextArgument) || !failOnDoubleArguments) break;
+                    String highlighted = input.trim();
+                    for (String identifier : currentArgument.identifiers)
+                        highlighted = highlightIdentifier(highlighted, identifier);
+                    return Results.failed("Argument appears twice in args string\n" + currentArgument + "\n" + highlighted);
                 }
+            }
 
-                String parameter = parameterBuilder.toString();
-                if (parameter.length() > 0) {
-                    if (!currentArgument.hasParameterCorrectType(parameter))
-                        throw new ArgParserException("Argument parameter is of wrong type\n" + currentArgument + "\nGot: " + parameter + "\nExpected: " + currentArgument.parameterType.toString().toLowerCase());
-                    if (!currentArgument.parameterIsInValidValues(parameter))
-                        throw new ArgParserException("Argument parameter is not in allowed values set\n" + currentArgument + "\nGot: " + parameter + "\nExpected: " + String.join(",", currentArgument.validParameterValues));
-                } else {
-                    if (currentArgument.parameterRequired)
-                        throw new ArgParserException("Missing argument parameter\n" + currentArgument + "\nExpected: " + currentArgument.parameterType.toString().toLowerCase());
-                    parameter = null;
-                }
-                if (parameter == null) {
-                    if (currentArgument.defaultParameterValue != null)
-                        results.add(new Result(currentArgument, currentArgumentIndex, currentArgument.defaultParameterValue));
-                    else results.add(new Result(currentArgument, currentArgumentIndex, null));
-                } else {
-                    results.add(new Result(currentArgument, currentArgumentIndex, parameter));
-                }
-                currentArgumentIndex++;
+            String parameter = Token.join(input, args, parameterStart, i);
+            if (parameter.length() > 0) {
+                if (!currentArgument.hasParameterCorrectType(parameter))
+                    return Results.failed("Argument parameter is of wrong type\n" + currentArgument + "\nGot: " + parameter + "\nExpected: " + currentArgument.parameterType.toString().toLowerCase());
+                if (!currentArgument.parameterIsInValidValues(parameter))
+                    return Results.failed("Argument parameter is not in allowed values set\n" + currentArgument + "\nGot: " + parameter + "\nExpected: " + String.join(",", currentArgument.validParameterValues));
+            } else {
+                if (currentArgument.parameterRequired)
+                    return Results.failed("Missing argument parameter\n" + currentArgument + "\nExpected: " + currentArgument.parameterType.toString().toLowerCase());
+                parameter = null;
+            }
+            if (parameter == null) {
+                if (currentArgument.defaultParameterValue != null)
+                    results.add(new Result(currentArgument, currentArgumentIndex, currentArgument.defaultParameterValue));
+                else results.add(new Result(currentArgument, currentArgumentIndex, null));
+            } else {
+                results.add(new Result(currentArgument, currentArgumentIndex, parameter));
             }
+            currentArgumentIndex++;
         }
 
         // check if there are still any required arguments
-        for (Argument currentArgument : remainingArguments)
-            if (currentArgument.required)
-                throw new ArgParserException("Invalid argument syntax for '" + currentArgument + "' in '" + String.join(" ", args) + "'");
+        for (Argument currentArgument : arguments)
+            if (currentArgument.required && !foundArguments.contains(currentArgument))
+                return Results.failed("Invalid argument syntax for '" + currentArgument + "' in '" + input.trim() + "'");
 
         // set default values
-        for (Argument currentArgument : remainingArguments)
-            if (currentArgument.defaultParameterValue != null) {
+        for (Argument currentArgument : arguments)
+            if (currentArgument.defaultParameterValue != null && !foundArguments.contains(currentArgument)) {
                 results.add(new Result(currentArgument, currentArgumentIndex, currentArgument.defaultParameterValue));
                 currentArgumentIndex++;
             }
@@ -168,6 +180,11 @@ public class ArgParser implements Iterable<ArgParser.Argument> {
         return new Results(results);
     }
 
+    private Argument findArgument(String input, Token token) {
+        if (token.quoted || token.end - token.start > maxIdentifierLength) return null;
+        return argumentsByIdentifier.get(input.substring(token.start, token.end));
+    }
+
     public String commandSyntax() {
         List<Argument> sortedArguments = arguments.stream().sorted().collect(Collectors.toList());
 
@@ -211,9 +228,30 @@ public class ArgParser implements Iterable<ArgParser.Argument> {
 
     public static class Results implements Iterable<Result> {
         private final List<Result> results;
+        private final String error;
 
         public Results(List<Result> results) {
+            this(results, null);
+        }
+
+        private Results(List<Result> results, String error) {
             this.results = results;
+            this.error = error;
+        }
+
+        public static Results failed(String error) {
+            return new Results(Collections.emptyList(), error);
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+
+        /**
+         * @return The reason why the args string could not be parsed, <code>null</code> if it was parsed successfully.
+         */
+        public String getError() {
+            return error;
         }
 
         public List<Result> getResults() {
@@ -327,7 +365,7 @@ public class ArgParser implements Iterable<ArgParser.Argument> {
         }
 
         public boolean getBoolean() {
-            return parameter.toLowerCase().matches("(true|1)");
+            return "true".equalsIgnoreCase(parameter) || "1".equals(parameter);
         }
 
         public float getFloat() {
@@ -350,6 +388,11 @@ public class ArgParser implements Iterable<ArgParser.Argument> {
 
     public static class Argument implements Comparable<Argument> {
 
+        private final static Pattern INTEGER_PATTERN = Pattern.compile("-?\\d{1,10}");
+        private final static Pattern LONG_PATTERN = Pattern.compile("-?\\d{1,19}");
+        private final static Pattern DECIMAL_PATTERN = Pattern.compile("-?[0-9]*\\.?[0-9]+");
+        private final static Pattern BOOLEAN_PATTERN = Pattern.compile("(true|false|1|0)", Pattern.CASE_INSENSITIVE);
+
         private ParameterType parameterType = ParameterType.NONE;
         private String parameterName = null;
         private String defaultParameterValue = null;
@@ -477,14 +520,14 @@ public class ArgParser implements Iterable<ArgParser.Argument> {
                 case ANY:
                     return parameter != null;
                 case INTEGER:
-                    return parameter.matches("-?\\d{1,10}");
+                    return INTEGER_PATTERN.matcher(parameter).matches();
                 case LONG:
-                    return parameter.matches("-?\\d{1,19}");
+                    return LONG_PATTERN.matcher(parameter).matches();
                 case FLOAT:
                 case DOUBLE:
-                    return parameter.matches("-?[0-9]*\\.?[0-9]+");
+                    return DECIMAL_PATTERN.matcher(parameter).matches();
                 case BOOLEAN:
-                    return parameter.toLowerCase().matches("(true|false|1|0)");
+                    return BOOLEAN_PATTERN.matcher(parameter).matches();
             }
             return false;
         }
@@ -534,6 +577,107 @@ public class ArgParser implements Iterable<ArgParser.Argument> {
         }
     }
 
+    /**
+     * A token of an args string, stored as the offsets of the token in the string. Tokens are separated by whitespace.
+     * <br>
+     * A token that starts with a <code>"</code> or <code>'</code> is quoted if the same quote is followed by whitespace
+     * or the end of the string later on. Quoted tokens may contain whitespace and are never treated as identifiers.
+     * Inside of them, <code>\"</code>, <code>\'</code> and <code>\\</code> escape the next character. Outside of
+     * quoted tokens, only quotes can be escaped, so that backslashes can be used as they are.<br>
+     * Only the tokens that contain quotes or escapes store their value separately.
+     */
+    private static class Token {
+        private final int start;
+        private final int end;
+        private final boolean quoted;
+        private final String value;
+
+        private Token(int start, int end, boolean quoted, String value) {
+            this.start = start;
+            this.end = end;
+            this.quoted = quoted;
+            this.value = value;
+        }
+
+        private static List<Token> tokenize(String input) {
+            List<Token> tokens = new ArrayList<>();
+            int length = input.length();
+            int i = 0;
+            while (i < length) {
+                char c = input.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                }
+
+                int start = i;
+                if (c == '"' || c == '\'') {
+                    int closingQuote = findClosingQuote(input, i + 1, c);
+                    if (closingQuote != -1) {
+                        tokens.add(new Token(start, closingQuote + 1, true, unescape(input, start + 1, closingQuote, true)));
+                        i = closingQuote + 1;
+                        continue;
+                    }
+                }
+
+                boolean escaped = false;
+                while (i < length && !Character.isWhitespace(input.charAt(i))) {
+                    if (isEscape(input, i, false)) {
+                        escaped = true;
+                        i++;
+                    }
+                    i++;
+                }
+                tokens.add(new Token(start, i, false, escaped ? unescape(input, start, i, false) : null));
+            }
+            return tokens;
+        }
+
+        private static int findClosingQuote(String input, int from, char quote) {
+            for (int i = from; i < input.length(); i++) {
+                if (isEscape(input, i, true)) i++;
+                else if (input.charAt(i) == quote && (i + 1 == input.length() || Character.isWhitespace(input.charAt(i + 1))))
+                    return i;
+            }
+            return -1;
+        }
+
+        private static boolean isEscape(String input, int index, boolean quoted) {
+            if (input.charAt(index) != '\\' || index + 1 >= input.length()) return false;
+            char next = input.charAt(index + 1);
+            return next == '"' || next == '\'' || (quoted && next == '\\');
+        }
+
+        private static String unescape(String input, int start, int end, boolean quoted) {
+            StringBuilder value = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                if (isEscape(input, i, quoted)) i++;
+                value.append(input.charAt(i));
+            }
+            return value.toString();
+        }
+
+        /**
+         * @return The tokens from <code>from</code> (inclusive) to <code>to</code> (exclusive) with the whitespace
+         * between them, or an empty string if there are no tokens.
+         */
+        private static String join(String input, List<Token> tokens, int from, int to) {
+            if (from >= to) return "";
+            boolean copied = false;
+            for (int i = from; i < to; i++) copied |= tokens.get(i).value != null;
+            if (!copied) return input.substring(tokens.get(from).start, tokens.get(to - 1).end);
+
+            StringBuilder joined = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                Token token = tokens.get(i);
+                if (i > from) joined.append(input, tokens.get(i - 1).end, token.start);
+                if (token.value != null) joined.append(token.value);
+                else joined.append(input, token.start, token.end);
+            }
+            return joined.toString();
+        }
+    }
+
     private static class ArgParserException extends IllegalArgumentException {
         public ArgParserException(String message) {
             super(message);
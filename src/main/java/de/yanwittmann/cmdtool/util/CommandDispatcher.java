@@ -0,0 +1,75 @@
+package de.yanwittmann.cmdtool.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds the command for an input by the first word of the input, which has to be the prefix of one of the
+ * {@link ArgParser}s that have been added. Only the parser of that command parses the input, once, and syntax errors
+ * are returned as part of the {@link Dispatch} instead of being thrown.
+ */
+public class CommandDispatcher {
+
+    private final Map<String, ArgParser> commands = new HashMap<>();
+
+    /**
+     * @param command The command to add, it needs a prefix that no other command uses.
+     */
+    public void addCommand(ArgParser command) {
+        String prefix = command.getPrefix();
+        if (prefix == null || prefix.length() == 0 || prefix.contains(" "))
+            throw new IllegalArgumentException("Commands need a single word prefix to be dispatched: " + command.commandSyntax());
+        if (commands.containsKey(prefix))
+            throw new IllegalArgumentException("There already is a command with the prefix " + prefix);
+        commands.put(prefix, command);
+    }
+
+    public ArgParser getCommand(String input) {
+        return commands.get(getCommandName(input));
+    }
+
+    /**
+     * @param input The input to parse.
+     * @return The command and parsed arguments, or <code>null</code> if there is no command with the first word of the
+     * input as prefix.
+     */
+    public Dispatch dispatch(String input) {
+        input = input.trim();
+        ArgParser command = commands.get(getCommandName(input));
+        if (command == null) return null;
+        return new Dispatch(command, command.tryParse(input));
+    }
+
+    private static String getCommandName(String input) {
+        int start = 0;
+        while (start < input.length() && input.charAt(start) == ' ') start++;
+        int end = input.indexOf(' ', start);
+        return end == -1 ? input.substring(start) : input.substring(start, end);
+    }
+
+    public static class Dispatch {
+        private final ArgParser command;
+        private final ArgParser.Results results;
+
+        private Dispatch(ArgParser command, ArgParser.Results results) {
+            this.command = command;
+            this.results = results;
+        }
+
+        public ArgParser getCommand() {
+            return command;
+        }
+
+        public ArgParser.Results getResults() {
+            return results;
+        }
+
+        public boolean isSuccessful() {
+            return results.isSuccessful();
+        }
+
+        public String getError() {
+            return results.getError();
+        }
+    }
+}
@@ -111,6 +111,55 @@ public abstract class CommandGenerator {
                         .setParameterType(ArgParser.Argument.ParameterType.BOOLEAN)
                         .setDescription("Whether or not to let the chart start at zero. Default: true.")
         );
+        chartCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--maxPoints", "-max")
+                        .setRequired(false)
+                        .setParameterRequired(true)
+                        .setParameterType(ArgParser.Argument.ParameterType.INTEGER)
+                        .setDescription("Reduces the data to this amount of points, keeping the shape of the series.")
+        );
+        chartCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--column", "-col")
+                        .setRequired(false)
+                        .setParameterRequired(true)
+                        .setParameterType(ArgParser.Argument.ParameterType.STRING)
+                        .setDescription("Adds columns calculated from other columns, like \"ratio = a / b\". Separate multiple columns using ;.")
+        );
+        chartCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--groupBy", "-gb")
+                        .setRequired(false)
+                        .setParameterRequired(true)
+                        .setParameterType(ArgParser.Argument.ParameterType.STRING)
+                        .setDescription("Combines the rows with the same value in this column into one row, labeled by the value.")
+        );
+        chartCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--rolling", "-roll")
+                        .setRequired(false)
+                        .setParameterRequired(true)
+                        .setParameterType(ArgParser.Argument.ParameterType.INTEGER)
+                        .setDescription("Replaces every row with the aggregate of the last rows, using a window of this size.")
+        );
+        chartCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--bucket", "-bu")
+                        .setRequired(false)
+                        .setParameterRequired(true)
+                        .setParameterType(ArgParser.Argument.ParameterType.INTEGER)
+                        .setDescription("Combines every this many consecutive rows into one row.")
+        );
+        chartCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--aggregate", "-agg")
+                        .setRequired(false)
+                        .setParameterRequired(true)
+                        .setParameterType(ArgParser.Argument.ParameterType.STRING)
+                        .addValidParameterValue("mean", "sum", "min", "max", "count")
+                        .setDescription("The function to combine rows with when using --groupBy, --rolling or --bucket. Default: mean.")
+        );
         return chartCommand;
     }
 
@@ -183,6 +232,21 @@ public abstract class CommandGenerator {
                         .setParameterType(ArgParser.Argument.ParameterType.STRING)
                         .setDescription("Checks if the given expression is a tautologie.")
         );
+        mathCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--satisfiable", "-sat")
+                        .setParameterName("expression")
+                        .setRequired(false)
+                        .setParameterRequired(true)
+                        .setParameterType(ArgParser.Argument.ParameterType.STRING)
+                        .setDescription("Searches for an assignment of the variables that makes the given expression true.")
+        );
+        mathCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--cnf", "-cnf")
+                        .setRequired(false)
+                        .setDescription("Checks for a tautologie by transforming the expression into the conjunctive normal form and prints the steps.")
+        );
         mathCommand.addArgument(
                 new ArgParser.Argument()
                         .addIdentifier("--truth", "-tr")
@@ -199,6 +263,33 @@ public abstract class CommandGenerator {
                         .setRequired(false)
                         .setDescription("Build yourself a truth table from several expressions.")
         );
+        mathCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--count", "-co")
+                        .setParameterName("expression")
+                        .setRequired(false)
+                        .setParameterRequired(true)
+                        .setParameterType(ArgParser.Argument.ParameterType.STRING)
+                        .setDescription("Counts the rows of the truth table of the given expression that are true, without generating the table.")
+        );
+        mathCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--minterms", "-mi")
+                        .setParameterName("expression")
+                        .setRequired(false)
+                        .setParameterRequired(true)
+                        .setParameterType(ArgParser.Argument.ParameterType.STRING)
+                        .setDescription("Lists the indices of the rows of the truth table of the given expression that are true.")
+        );
+        mathCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--minimize", "-min")
+                        .setParameterName("expression")
+                        .setRequired(false)
+                        .setParameterRequired(false)
+                        .setParameterType(ArgParser.Argument.ParameterType.STRING)
+                        .setDescription("Minimizes the given expression into a sum of products and a product of sums. Combine with -trb to minimize every column of the built truth table.")
+        );
         mathCommand.addArgument(
                 new ArgParser.Argument()
                         .addIdentifier("--variables", "-va")
@@ -217,6 +308,36 @@ public abstract class CommandGenerator {
                         .setParameterType(ArgParser.Argument.ParameterType.STRING)
                         .setDescription("Checks if two expressions lead to the same truth table. Provide expressions with parameters -p1 and -p2.")
         );
+        mathCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--bdd", "-bdd")
+                        .setParameterName("expression")
+                        .setRequired(false)
+                        .setParameterRequired(false)
+                        .setParameterType(ArgParser.Argument.ParameterType.STRING)
+                        .setDescription("Builds a binary decision diagram from the given expression and reports its size and amount of satisfying assignments. Combine with -eq to check the expressions using decision diagrams.")
+        );
+        mathCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--table", "-tab")
+                        .setRequired(false)
+                        .setDescription("Also prints the truth tables of the expressions when checking them for equality.")
+        );
+        mathCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--steps", "-st")
+                        .setRequired(false)
+                        .setDescription("Adds a column for every sub-expression to the truth tables.")
+        );
+        mathCommand.addArgument(
+                new ArgParser.Argument()
+                        .addIdentifier("--threads", "-th")
+                        .setParameterName("amount")
+                        .setRequired(false)
+                        .setParameterRequired(true)
+                        .setParameterType(ArgParser.Argument.ParameterType.INTEGER)
+                        .setDescription("The amount of threads used to generate truth tables. Uses all available processors by default.")
+        );
         mathCommand.addArgument(
                 new ArgParser.Argument()
                         .addIdentifier("-p1", "--parameter1")
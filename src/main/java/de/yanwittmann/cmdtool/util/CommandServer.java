@@ -0,0 +1,177 @@
+package de.yanwittmann.cmdtool.util;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Scanner;
+
+/**
+ * Keeps the tool running in the background, so that commands can be run without starting a new JVM every time.<br>
+ * The server only accepts connections from the local machine. Since other users of the machine can connect as well,
+ * the server creates a random token when it starts and stores it in a file only the user can read. Every connection
+ * is a session that works like a script:
+ * <ol>
+ *     <li>The client sends the token as the first line. If the token is wrong, the session ends without running any
+ *     commands.</li>
+ *     <li>The client sends one or more commands, one per line, and closes its output. If the client sends nothing
+ *     for {@link #READ_TIMEOUT_MILLIS}, the session ends as if the output was closed.</li>
+ *     <li>The server runs the commands and sends everything they print back to the client.</li>
+ *     <li>The server ends the session with a <code>NUL</code> character, followed by the exit status of the commands
+ *     and a line break. The output of the commands never contains this character.</li>
+ * </ol>
+ * Since the commands print to {@link System#out}, the sessions are run one after another. Any tool that can send a
+ * line over TCP can be used as client, for example
+ * <code>{ cat server-20473.token; echo "math -tr A AND B"; } | nc -N localhost 20473</code> in the data directory.
+ * Without <code>-N</code>, OpenBSD netcat does not close its output and the session only ends after the timeout.
+ */
+public abstract class CommandServer {
+
+    public final static int DEFAULT_PORT = 20473;
+    public final static int READ_TIMEOUT_MILLIS = 10000;
+    private final static char STATUS_MARKER = '\0';
+    private final static int TOKEN_BYTES = 32;
+
+    /**
+     * Accepts sessions until the process is stopped.
+     *
+     * @param port           The port to listen on, only bound to the loopback address.
+     * @param tokenFile      The file to store the token of the server in, it is deleted when the process ends.
+     * @param sessionHandler Runs the commands of a session and returns the exit status.
+     * @throws IOException If the port cannot be bound or the token cannot be stored.
+     */
+    public static void serve(int port, File tokenFile, SessionHandler sessionHandler) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            byte[] token = createToken(tokenFile);
+            System.out.println("Listening for commands on " + serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort());
+            System.out.println("Clients have to send the token stored in " + tokenFile.getAbsolutePath());
+            while (true) {
+                try (Socket socket = serverSocket.accept()) {
+                    socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                    runSession(socket, token, sessionHandler);
+                } catch (IOException e) {
+                    System.err.println("Session failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a random token and writes it to the file, which only the owner can read and write on file systems that
+     * support POSIX permissions.
+     *
+     * @return The token as it is sent by the clients.
+     */
+    private static byte[] createToken(File tokenFile) throws IOException {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) token.append(String.format("%02x", b & 0xFF));
+
+        Path path = tokenFile.toPath();
+        Files.deleteIfExists(path);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        else Files.createFile(path);
+        tokenFile.deleteOnExit();
+        Files.write(path, (token + "\n").getBytes(StandardCharsets.US_ASCII));
+        return token.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void runSession(Socket socket, byte[] token, SessionHandler sessionHandler) throws IOException {
+        PrintStream output = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false);
+        Scanner input = new Scanner(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintStream standardOutput = System.out;
+        PrintStream standardError = System.err;
+        int status;
+        String receivedToken = input.hasNextLine() ? input.nextLine().trim() : "";
+        if (!MessageDigest.isEqual(token, receivedToken.getBytes(StandardCharsets.UTF_8))) {
+            // the commands of the session are not read at all
+            System.err.println("Rejected a session with an invalid token");
+            output.println("Invalid token, send the token of the server as the first line");
+            output.print(STATUS_MARKER);
+            output.print(2);
+            output.print('\n');
+            output.flush();
+            return;
+        }
+        System.setOut(output);
+        System.setErr(output);
+        try {
+            status = sessionHandler.run(input);
+            // the scanner treats a timed out read like the end of the input
+            if (input.ioException() instanceof SocketTimeoutException)
+                System.err.println("No commands received for " + READ_TIMEOUT_MILLIS + " ms, ending the session");
+        } catch (Throwable e) {
+            // errors the session handler does not catch only end the session, the server keeps running for other clients
+            e.printStackTrace();
+            status = 2;
+        } finally {
+            System.setOut(standardOutput);
+            System.setErr(standardError);
+        }
+        output.print(STATUS_MARKER);
+        output.print(status);
+        output.print('\n');
+        output.flush();
+        if (output.checkError()) throw new IOException("The client closed the connection");
+    }
+
+    /**
+     * Sends the commands to a running server and copies the output of the commands to {@link System#out}.
+     *
+     * @param port      The port the server listens on.
+     * @param tokenFile The file the server stored its token in.
+     * @param commands  The commands, one per line.
+     * @return The exit status of the commands.
+     * @throws IOException If the token cannot be read or the server cannot be reached.
+     */
+    public static int runClient(int port, File tokenFile, String commands) throws IOException {
+        String token;
+        try {
+            token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.US_ASCII).trim();
+        } catch (NoSuchFileException e) {
+            throw new IOException("No server token found in " + tokenFile.getAbsolutePath() + ", is the server running?");
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream request = socket.getOutputStream();
+            request.write((token + "\n").getBytes(StandardCharsets.US_ASCII));
+            request.write(commands.getBytes(StandardCharsets.UTF_8));
+            if (!commands.endsWith("\n")) request.write('\n');
+            request.flush();
+            socket.shutdownOutput();
+
+            InputStream response = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = new BufferedOutputStream(System.out);
+            int b;
+            while ((b = response.read()) != -1) {
+                if (b == STATUS_MARKER) {
+                    output.flush();
+                    StringBuilder status = new StringBuilder();
+                    while ((b = response.read()) != -1 && b != '\n') status.append((char) b);
+                    return Integer.parseInt(status.toString().trim());
+                }
+                output.write(b);
+            }
+            output.flush();
+            throw new IOException("The server closed the connection before all commands were run");
+        }
+    }
+
+    public interface SessionHandler {
+        /**
+         * @param commands The commands of the session, one per line.
+         * @return The exit status of the commands.
+         */
+        int run(Scanner commands);
+    }
+}
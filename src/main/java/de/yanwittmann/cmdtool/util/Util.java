@@ -76,14 +76,23 @@ public abstract class Util {
     public final static int INPUT_REGULAR = 0;
     public final static int INPUT_INDENT_1 = 1;
 
+    private static boolean showPrompts = true;
+
     public static String askForInput(Scanner scanner, int type) {
-        if (type == INPUT_REGULAR) System.out.print("> ");
-        else if (type == INPUT_INDENT_1) System.out.print(" > ");
+        if (showPrompts && type == INPUT_REGULAR) System.out.print("> ");
+        else if (showPrompts && type == INPUT_INDENT_1) System.out.print(" > ");
         String input = scanner.nextLine();
-        inputListener.input(input);
+        if (inputListener != null) inputListener.input(input);
         return input;
     }
 
+    /**
+     * @param show If the prompts should be printed before reading an input, disabled when running a script.
+     */
+    public static void setShowPrompts(boolean show) {
+        showPrompts = show;
+    }
+
     public static List<String> multiCmdInput(Scanner scanner, MultilineInputListener listener) {
         List<String> inputs = new ArrayList<>();
         while (true) {